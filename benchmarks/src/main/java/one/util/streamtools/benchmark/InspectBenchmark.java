@@ -0,0 +1,78 @@
+package one.util.streamtools.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+import one.util.streamtools.SplitTree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares plain parallel streams with the same streams collected into the
+ * {@link SplitTree}. Every stream is executed inside the dedicated
+ * {@link ForkJoinPool} of the given parallelism. The primitive streams are
+ * measured by {@link InspectPrimitiveBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InspectBenchmark {
+    @Param({ "1000", "100000", "1000000" })
+    private int size;
+
+    @Param({ "ARRAY_LIST", "ARRAY", "RANGE", "ITERATE" })
+    private Sources source;
+
+    @Param({ "1", "2", "4", "8" })
+    private int parallelism;
+
+    private List<Integer> list;
+    private Integer[] array;
+    private ForkJoinPool pool;
+    private final Collector<Object, ?, SplitTree> sampled = SplitTree.collector(1024);
+
+    @Setup(Level.Trial)
+    public void setup() {
+        list = Sources.list(size);
+        array = list.toArray(new Integer[0]);
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public long plain() {
+        return pool.submit(() -> source.stream(list, array, size).parallel().collect(Collectors.counting())).join();
+    }
+
+    @Benchmark
+    public SplitTree collector() {
+        return pool.submit(() -> source.stream(list, array, size).parallel().collect(SplitTree.collector())).join();
+    }
+
+    @Benchmark
+    public SplitTree sampledCollector() {
+        return pool.submit(() -> source.stream(list, array, size).parallel().collect(sampled)).join();
+    }
+}
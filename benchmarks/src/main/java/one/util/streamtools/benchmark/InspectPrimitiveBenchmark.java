@@ -0,0 +1,70 @@
+package one.util.streamtools.benchmark;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import one.util.streamtools.IntSplitNode;
+import one.util.streamtools.SplitTree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the plain parallel {@code IntStream.range} with the same stream
+ * inspected via the primitive split nodes. Every stream is executed inside
+ * the dedicated {@link ForkJoinPool} of the given parallelism.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InspectPrimitiveBenchmark {
+    @Param({ "1000", "100000", "1000000" })
+    private int size;
+
+    @Param({ "1", "2", "4", "8" })
+    private int parallelism;
+
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public long plainInt() {
+        return pool.submit(() -> IntStream.range(0, size).parallel().asLongStream().sum()).join();
+    }
+
+    @Benchmark
+    public SplitTree inspectInt() {
+        return pool.submit(() -> SplitTree.inspect(IntStream.range(0, size))).join();
+    }
+
+    @Benchmark
+    public IntSplitNode sampledInt() {
+        return pool.submit(
+            () -> IntStream.range(0, size).parallel().collect(() -> new IntSplitNode(1024), IntSplitNode::accept,
+                IntSplitNode::merge)).join();
+    }
+}
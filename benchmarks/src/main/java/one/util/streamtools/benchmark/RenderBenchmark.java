@@ -0,0 +1,113 @@
+package one.util.streamtools.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import one.util.streamtools.DotFormatter;
+import one.util.streamtools.SplitTree;
+import one.util.streamtools.TimeLineFormatter;
+import one.util.streamtools.TraceEventFormatter;
+import one.util.streamtools.XGMLFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the rendering throughput of the split tree formatters. The tree is
+ * recorded once per trial from the {@code IntStream.range} executed in the
+ * pool of the given parallelism, so bigger parallelism produces more leafs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+    @Param({ "100000", "10000000" })
+    private int size;
+
+    @Param({ "4", "64" })
+    private int parallelism;
+
+    private SplitTree tree;
+
+    private static class BlackholeWriter extends Writer {
+        private final Blackhole bh;
+
+        BlackholeWriter(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            for (int i = off; i < off + len; i++)
+                bh.consume(cbuf[i]);
+        }
+
+        @Override
+        public void write(String str) {
+            bh.consume(str);
+        }
+
+        @Override
+        public void write(int c) {
+            bh.consume(c);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Setup
+    public void setup() {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        tree = pool.submit(() -> SplitTree.inspect(IntStream.range(0, size))).join();
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<String> asLines() {
+        // a fresh tree instance, so the cached rendering is not reused
+        return new SplitTree(tree.root()).asLines();
+    }
+
+    @Benchmark
+    public List<String> timeLine() {
+        return TimeLineFormatter.format(tree);
+    }
+
+    @Benchmark
+    public void xgml(Blackhole bh) throws IOException {
+        new XGMLFormatter().writeTo(tree, new BlackholeWriter(bh));
+    }
+
+    @Benchmark
+    public void dot(Blackhole bh) throws IOException {
+        new DotFormatter().writeTo(tree, new BlackholeWriter(bh));
+    }
+
+    @Benchmark
+    public void traceEvents(Blackhole bh) throws IOException {
+        new TraceEventFormatter().writeTo(tree, new BlackholeWriter(bh));
+    }
+}
@@ -0,0 +1,45 @@
+package one.util.streamtools.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Stream sources with different splitting behavior
+ */
+public enum Sources {
+    ARRAY_LIST {
+        @Override
+        Stream<Integer> stream(List<Integer> list, Integer[] array, int size) {
+            return list.stream();
+        }
+    },
+    ARRAY {
+        @Override
+        Stream<Integer> stream(List<Integer> list, Integer[] array, int size) {
+            return Stream.of(array);
+        }
+    },
+    RANGE {
+        @Override
+        Stream<Integer> stream(List<Integer> list, Integer[] array, int size) {
+            return IntStream.range(0, size).boxed();
+        }
+    },
+    ITERATE {
+        @Override
+        Stream<Integer> stream(List<Integer> list, Integer[] array, int size) {
+            return Stream.iterate(0, x -> x + 1).limit(size);
+        }
+    };
+
+    abstract Stream<Integer> stream(List<Integer> list, Integer[] array, int size);
+
+    static List<Integer> list(int size) {
+        List<Integer> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            list.add(i);
+        return list;
+    }
+}
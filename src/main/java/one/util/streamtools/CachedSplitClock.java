@@ -0,0 +1,48 @@
+package one.util.streamtools;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link SplitClock} which returns the time cached by the background daemon
+ * thread. Reading it is cheaper than {@link System#nanoTime()}, but the
+ * precision is limited by the update resolution, so short nodes may appear to
+ * have zero duration.
+ */
+public class CachedSplitClock implements SplitClock, AutoCloseable {
+    private volatile long time = System.nanoTime();
+    private volatile boolean closed;
+    private final Thread ticker;
+
+    /**
+     * Creates and starts the clock
+     * 
+     * @param resolutionNanos how often the background thread updates the time
+     */
+    public CachedSplitClock(long resolutionNanos) {
+        if (resolutionNanos <= 0)
+            throw new IllegalArgumentException("resolutionNanos must be positive: " + resolutionNanos);
+        ticker = new Thread(() -> {
+            while (!closed) {
+                LockSupport.parkNanos(resolutionNanos);
+                time = System.nanoTime();
+            }
+        }, "SplitClock-ticker");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public long nanoTime() {
+        return time;
+    }
+
+    /**
+     * Stops the background thread. After closing the clock returns the last
+     * cached time.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(ticker);
+    }
+}
@@ -0,0 +1,670 @@
+package one.util.streamtools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Consumer;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+
+/**
+ * Memory-efficient split tree for the streams which produce millions of
+ * nodes. The nodes are stored in the parallel primitive arrays (allocated in
+ * chunks) indexed by the node ID, and the elements themselves are not
+ * retained. The first and the last elements of the leaf are stored as raw
+ * {@code long} values if they are boxed primitives (numbers, characters),
+ * otherwise their string representations are interned into the table. The
+ * splitting node reuses these columns for the children IDs: its first and
+ * last elements are looked up in the leftmost and the rightmost non-empty
+ * leafs, which takes O(depth). Thus the node takes 47 bytes (versus about 72
+ * bytes retained by {@link SplitNode}) plus its share of the interned strings
+ * for other elements; the string representations are created only when
+ * requested. The nodes can be inspected via the {@link Node} flyweight which
+ * can be moved from one node to another without allocation.
+ * 
+ * <p>
+ * Children always have smaller IDs than their parent and the root has the
+ * biggest ID.
+ * 
+ * <pre>{@code
+ * CompactSplitTree tree = hugeStream.parallel().collect(CompactSplitTree.collector());
+ * CompactSplitTree.Node node = tree.node(tree.root());
+ * tree.forEachLeaf(leaf -> histogram.accept(leaf.getCount()));
+ * }</pre>
+ */
+public class CompactSplitTree {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MIN_CHUNK_SIZE = 8;
+
+    // the kinds of the stored leaf values: the first in the lowest bits, the
+    // last in the next bits
+    private static final int NONE = 0;
+    private static final int LONG = 1;
+    private static final int DOUBLE = 2;
+    private static final int FLOAT = 3;
+    private static final int CHAR = 4;
+    private static final int LABEL = 5;
+    private static final int KIND_BITS = 3;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+    // the kind of the splitting node which stores the children IDs
+    private static final byte SPLIT = 1 << (KIND_BITS * 2);
+
+    private long[][] starts = new long[1][], ends = new long[1][], counts = new long[1][];
+    // the first and the last leaf values or the left and the right children
+    private long[][] firstOrLeft = new long[1][], lastOrRight = new long[1][];
+    private byte[][] kinds = new byte[1][];
+    private int[][] threads = new int[1][];
+    private short[][] workers = new short[1][];
+    private int size;
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    private final List<ThreadIdentity> threadList = new ArrayList<>();
+    private final Map<ThreadIdentity, Integer> threadIndex = new HashMap<>();
+
+    /**
+     * The flyweight view of the single node. It's positioned to the node via
+     * {@link #moveTo(int)}.
+     */
+    public final class Node {
+        private int id;
+
+        Node(int id) {
+            this.id = id;
+        }
+
+        /**
+         * @param id the ID of the node to view
+         * @return this view
+         */
+        public Node moveTo(int id) {
+            if (id < 0 || id >= size)
+                throw new IndexOutOfBoundsException(String.valueOf(id));
+            this.id = id;
+            return this;
+        }
+
+        /**
+         * @return the ID of the viewed node
+         */
+        public int id() {
+            return id;
+        }
+
+        /**
+         * @return true if the viewed node is a leaf
+         */
+        public boolean isLeaf() {
+            return !isSplit(id);
+        }
+
+        /**
+         * @return the ID of the left child or -1 for the leaf
+         */
+        public int getLeft() {
+            return isSplit(id) ? (int) firstOrLeft[id >>> CHUNK_BITS][id & CHUNK_MASK] : -1;
+        }
+
+        /**
+         * @return the ID of the right child or -1 for the leaf
+         */
+        public int getRight() {
+            return isSplit(id) ? (int) lastOrRight[id >>> CHUNK_BITS][id & CHUNK_MASK] : -1;
+        }
+
+        /**
+         * @return number of elements collected in the viewed node
+         */
+        public long getCount() {
+            return count(id);
+        }
+
+        /**
+         * @return true if the viewed node collected no elements
+         */
+        public boolean isEmpty() {
+            return getCount() == 0;
+        }
+
+        /**
+         * @return string representation of the first element (or null if the
+         *         node is empty)
+         */
+        public String getFirst() {
+            if (getCount() == 0)
+                return null;
+            int leaf = id;
+            while (isSplit(leaf)) {
+                int left = (int) firstOrLeft[leaf >>> CHUNK_BITS][leaf & CHUNK_MASK];
+                leaf = count(left) > 0 ? left : (int) lastOrRight[leaf >>> CHUNK_BITS][leaf & CHUNK_MASK];
+            }
+            return decode(firstOrLeft[leaf >>> CHUNK_BITS][leaf & CHUNK_MASK], kinds[leaf >>> CHUNK_BITS][leaf
+                & CHUNK_MASK] & KIND_MASK);
+        }
+
+        /**
+         * @return string representation of the last element (or null if the
+         *         node has less than two elements)
+         */
+        public String getLast() {
+            if (getCount() < 2)
+                return null;
+            int leaf = id;
+            while (isSplit(leaf)) {
+                int right = (int) lastOrRight[leaf >>> CHUNK_BITS][leaf & CHUNK_MASK];
+                leaf = count(right) > 0 ? right : (int) firstOrLeft[leaf >>> CHUNK_BITS][leaf & CHUNK_MASK];
+            }
+            int kind = kinds[leaf >>> CHUNK_BITS][leaf & CHUNK_MASK];
+            // the single element of the leaf is its first and last element
+            return count(leaf) == 1 ? decode(firstOrLeft[leaf >>> CHUNK_BITS][leaf & CHUNK_MASK], kind & KIND_MASK)
+                    : decode(lastOrRight[leaf >>> CHUNK_BITS][leaf & CHUNK_MASK], kind >>> KIND_BITS);
+        }
+
+        /**
+         * @return the start time of the viewed node
+         */
+        public long getStartNanos() {
+            return starts[id >>> CHUNK_BITS][id & CHUNK_MASK];
+        }
+
+        /**
+         * @return the end time of the viewed node
+         */
+        public long getEndNanos() {
+            return ends[id >>> CHUNK_BITS][id & CHUNK_MASK];
+        }
+
+        /**
+         * @return the ID of the thread which processed the viewed node
+         */
+        public long getThreadId() {
+            return threadList.get(threads[id >>> CHUNK_BITS][id & CHUNK_MASK]).id;
+        }
+
+        /**
+         * @return the name of the thread which processed the viewed node
+         */
+        public String getThreadName() {
+            return threadList.get(threads[id >>> CHUNK_BITS][id & CHUNK_MASK]).name;
+        }
+
+        /**
+         * @return the fork-join pool worker index or -1
+         */
+        public int getWorkerIndex() {
+            return workers[id >>> CHUNK_BITS][id & CHUNK_MASK];
+        }
+
+        @Override
+        public String toString() {
+            if (isEmpty())
+                return "(empty)";
+            else if (getCount() == 1)
+                return "[" + getFirst() + "]";
+            return "[" + getFirst() + ".." + getLast() + "]";
+        }
+    }
+
+    /**
+     * The accumulation container of the {@link #collector()}: the node which
+     * is not stored yet and the store of its already combined descendants
+     * (null for the leaf)
+     */
+    static final class Pending {
+        final SplitClock clock;
+        final int timeMask;
+        CompactSplitTree tree;
+        Object first, last;
+        long count, start, end;
+        ThreadIdentity thread;
+        int worker;
+        int left = -1, right = -1;
+
+        Pending(SplitClock clock, int timeMask) {
+            this.clock = clock;
+            this.timeMask = timeMask;
+            this.start = this.end = clock.nanoTime();
+            recordThread();
+        }
+
+        void recordThread() {
+            Thread current = Thread.currentThread();
+            thread = ThreadIdentity.of(current);
+            worker = current instanceof ForkJoinWorkerThread ? ((ForkJoinWorkerThread) current).getPoolIndex() : -1;
+        }
+
+        void accept(Object obj) {
+            if (count == 0)
+                first = obj;
+            last = obj;
+            if ((count++ & timeMask) == 0)
+                end = clock.nanoTime();
+        }
+
+        /**
+         * Stores both nodes and turns this one into their parent. The smaller
+         * store is appended to the bigger one, so every node is copied at
+         * most log2(size) times.
+         */
+        Pending combine(Pending that) {
+            long combineStart = clock.nanoTime();
+            CompactSplitTree store;
+            int leftOffset = 0, rightOffset = 0;
+            if (that.tree == null || tree != null && tree.size >= that.tree.size) {
+                store = tree == null ? new CompactSplitTree() : tree;
+                rightOffset = store.append(that.tree);
+            } else {
+                store = that.tree;
+                leftOffset = store.append(tree);
+            }
+            int leftId = store.add(this, leftOffset);
+            int rightId = store.add(that, rightOffset);
+            tree = store;
+            that.tree = null;
+            left = leftId;
+            right = rightId;
+            if (count == 0)
+                first = that.first;
+            if (that.count > 0)
+                last = that.last;
+            count += that.count;
+            start = combineStart;
+            recordThread();
+            end = clock.nanoTime();
+            return this;
+        }
+
+        CompactSplitTree finish() {
+            if (timeMask != 0 && left < 0)
+                end = clock.nanoTime();
+            CompactSplitTree store = tree == null ? new CompactSplitTree() : tree;
+            tree = null;
+            ThreadIdentity stale = ThreadIdentity.refresh();
+            if (stale != null) {
+                ThreadIdentity fresh = ThreadIdentity.of(Thread.currentThread());
+                if (thread == stale)
+                    thread = fresh;
+                store.replaceThread(stale, fresh);
+            }
+            store.add(this, 0);
+            return store.seal();
+        }
+    }
+
+    CompactSplitTree() {
+    }
+
+    /**
+     * Returns a collector which builds the compact tree directly: only the
+     * nodes currently accumulated or combined are kept as objects. Every
+     * container stores its combined descendants separately, so the collector
+     * may be reused and used as a downstream collector.
+     * 
+     * @return the collector
+     */
+    public static Collector<Object, ?, CompactSplitTree> collector() {
+        return collector(SplitClock.system(), 1);
+    }
+
+    /**
+     * Returns a collector which builds the compact tree reading the timer
+     * only once per {@code timeSampling} elements of every leaf; the leaf end
+     * times have the precision described in {@link SplitTree#collector(int)}
+     * 
+     * @param timeSampling how often (in elements) the leaf end time is updated;
+     *        rounded up to the power of two
+     * @return the collector
+     */
+    public static Collector<Object, ?, CompactSplitTree> collector(int timeSampling) {
+        return collector(SplitClock.system(), timeSampling);
+    }
+
+    /**
+     * Returns a collector which builds the compact tree reading the
+     * timestamps from the supplied clock
+     * 
+     * @param clock the clock to read the timestamps from
+     * @param timeSampling how often (in elements) the leaf end time is updated;
+     *        rounded up to the power of two
+     * @return the collector
+     */
+    public static Collector<Object, ?, CompactSplitTree> collector(SplitClock clock, int timeSampling) {
+        if (timeSampling < 1)
+            throw new IllegalArgumentException("timeSampling must be positive: " + timeSampling);
+        int timeMask = timeSampling == 1 ? 0 : Integer.highestOneBit(Math.min(timeSampling - 1, 1 << 29)) * 2 - 1;
+        return Collector.of(() -> new Pending(clock, timeMask), Pending::accept, Pending::combine,
+            Pending::finish);
+    }
+
+    /**
+     * Converts the split tree into the compact form
+     * 
+     * @param tree the tree to convert
+     * @return the compact tree
+     */
+    public static CompactSplitTree of(SplitTree tree) {
+        CompactSplitTree result = new CompactSplitTree();
+        List<SplitNode> nodes = new ArrayList<>();
+        for (Iterator<SplitNode> it = SplitTree.preOrder(tree.root()); it.hasNext();)
+            nodes.add(it.next());
+        // children follow the parent in pre-order, so storing in reverse
+        // order assigns the children smaller IDs
+        Map<SplitNode, Integer> ids = new IdentityHashMap<>();
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            SplitNode node = nodes.get(i);
+            ThreadIdentity thread = new ThreadIdentity(node.getThreadId(), node.getThreadName());
+            int id = node.isLeaf() ? result.addLeaf(node.getFirst(), node.getLast(), node.getCount(), node
+                    .getStartNanos(), node.getEndNanos(), thread, node.getWorkerIndex()) : result.store(node
+                    .getCount(), node.getStartNanos(), node.getEndNanos(), SPLIT, ids.remove(node.getLeft()), ids
+                    .remove(node.getRight()), result.internThread(thread), node.getWorkerIndex());
+            ids.put(node, id);
+        }
+        return result.seal();
+    }
+
+    /**
+     * Stores the pending node shifting its children IDs by the given offset
+     */
+    int add(Pending node, int offset) {
+        if (node.left >= 0)
+            return store(node.count, node.start, node.end, SPLIT, node.left + offset, node.right + offset,
+                internThread(node.thread), node.worker);
+        return addLeaf(node.first, node.last, node.count, node.start, node.end, node.thread, node.worker);
+    }
+
+    private int addLeaf(Object first, Object last, long count, long start, long end, ThreadIdentity thread,
+            int worker) {
+        int firstKind = count == 0 ? NONE : kind(first), lastKind = count < 2 ? NONE : kind(last);
+        return store(count, start, end, (byte) (firstKind | lastKind << KIND_BITS), encode(first, firstKind),
+            encode(last, lastKind), internThread(thread), worker);
+    }
+
+    private static int kind(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+            return LONG;
+        if (value instanceof Double)
+            return DOUBLE;
+        if (value instanceof Float)
+            return FLOAT;
+        if (value instanceof Character)
+            return CHAR;
+        return LABEL;
+    }
+
+    private long encode(Object value, int kind) {
+        switch (kind) {
+        case LONG:
+            return ((Number) value).longValue();
+        case DOUBLE:
+            return Double.doubleToRawLongBits((Double) value);
+        case FLOAT:
+            return Float.floatToRawIntBits((Float) value);
+        case CHAR:
+            return (Character) value;
+        case LABEL:
+            return intern(String.valueOf(value));
+        default:
+            return 0;
+        }
+    }
+
+    private String decode(long value, int kind) {
+        switch (kind) {
+        case LONG:
+            return Long.toString(value);
+        case DOUBLE:
+            return Double.toString(Double.longBitsToDouble(value));
+        case FLOAT:
+            return Float.toString(Float.intBitsToFloat((int) value));
+        case CHAR:
+            return String.valueOf((char) value);
+        case LABEL:
+            return strings.get((int) value);
+        default:
+            return null;
+        }
+    }
+
+    private boolean isSplit(int id) {
+        return kinds[id >>> CHUNK_BITS][id & CHUNK_MASK] == SPLIT;
+    }
+
+    private long count(int id) {
+        return counts[id >>> CHUNK_BITS][id & CHUNK_MASK];
+    }
+
+    /**
+     * Appends all the nodes of the other unsealed tree to this one
+     * 
+     * @return the offset added to the IDs of the appended nodes
+     */
+    int append(CompactSplitTree other) {
+        int offset = size;
+        if (other == null)
+            return offset;
+        int[] stringMap = new int[other.strings.size()];
+        for (int i = 0; i < stringMap.length; i++)
+            stringMap[i] = intern(other.strings.get(i));
+        int[] threadMap = new int[other.threadList.size()];
+        for (int i = 0; i < threadMap.length; i++)
+            threadMap[i] = internThread(other.threadList.get(i));
+        for (int id = 0; id < other.size; id++) {
+            int chunk = id >>> CHUNK_BITS, pos = id & CHUNK_MASK;
+            byte kind = other.kinds[chunk][pos];
+            long first = other.firstOrLeft[chunk][pos], last = other.lastOrRight[chunk][pos];
+            if (kind == SPLIT) {
+                first += offset;
+                last += offset;
+            } else {
+                if ((kind & KIND_MASK) == LABEL)
+                    first = stringMap[(int) first];
+                if (kind >>> KIND_BITS == LABEL)
+                    last = stringMap[(int) last];
+            }
+            store(other.counts[chunk][pos], other.starts[chunk][pos], other.ends[chunk][pos], kind, first, last,
+                threadMap[other.threads[chunk][pos]], other.workers[chunk][pos]);
+        }
+        return offset;
+    }
+
+    private int store(long count, long start, long end, byte kind, long first, long last, int thread,
+            int worker) {
+        int id = size;
+        int chunk = id >>> CHUNK_BITS, pos = id & CHUNK_MASK;
+        if (chunk == starts.length)
+            growChunks();
+        if (starts[chunk] == null)
+            growChunk(chunk, chunk == 0 ? MIN_CHUNK_SIZE : CHUNK_SIZE);
+        else if (pos == starts[chunk].length)
+            growChunk(chunk, Math.min(CHUNK_SIZE, pos * 2));
+        starts[chunk][pos] = start;
+        ends[chunk][pos] = end;
+        counts[chunk][pos] = count;
+        kinds[chunk][pos] = kind;
+        firstOrLeft[chunk][pos] = first;
+        lastOrRight[chunk][pos] = last;
+        threads[chunk][pos] = thread;
+        workers[chunk][pos] = (short) worker;
+        return size++;
+    }
+
+    private void replaceThread(ThreadIdentity stale, ThreadIdentity fresh) {
+        Integer index = threadIndex.remove(stale);
+        if (index != null) {
+            threadList.set(index, fresh);
+            threadIndex.put(fresh, index);
+        }
+    }
+
+    private int internThread(ThreadIdentity thread) {
+        Integer index = threadIndex.get(thread);
+        if (index == null) {
+            index = threadList.size();
+            threadList.add(thread);
+            threadIndex.put(thread, index);
+        }
+        return index;
+    }
+
+    private int intern(String s) {
+        Integer index = stringIndex.get(s);
+        if (index == null) {
+            index = strings.size();
+            strings.add(s);
+            stringIndex.put(s, index);
+        }
+        return index;
+    }
+
+    /**
+     * Reallocates the last chunk: the chunks grow gradually, so the small
+     * trees built by the collector containers stay small
+     */
+    private void growChunk(int chunk, int length) {
+        if (starts[chunk] == null) {
+            starts[chunk] = new long[length];
+            ends[chunk] = new long[length];
+            counts[chunk] = new long[length];
+            firstOrLeft[chunk] = new long[length];
+            lastOrRight[chunk] = new long[length];
+            kinds[chunk] = new byte[length];
+            threads[chunk] = new int[length];
+            workers[chunk] = new short[length];
+            return;
+        }
+        starts[chunk] = Arrays.copyOf(starts[chunk], length);
+        ends[chunk] = Arrays.copyOf(ends[chunk], length);
+        counts[chunk] = Arrays.copyOf(counts[chunk], length);
+        firstOrLeft[chunk] = Arrays.copyOf(firstOrLeft[chunk], length);
+        lastOrRight[chunk] = Arrays.copyOf(lastOrRight[chunk], length);
+        kinds[chunk] = Arrays.copyOf(kinds[chunk], length);
+        threads[chunk] = Arrays.copyOf(threads[chunk], length);
+        workers[chunk] = Arrays.copyOf(workers[chunk], length);
+    }
+
+    private void growChunks() {
+        int length = starts.length * 2;
+        starts = Arrays.copyOf(starts, length);
+        ends = Arrays.copyOf(ends, length);
+        counts = Arrays.copyOf(counts, length);
+        firstOrLeft = Arrays.copyOf(firstOrLeft, length);
+        lastOrRight = Arrays.copyOf(lastOrRight, length);
+        kinds = Arrays.copyOf(kinds, length);
+        threads = Arrays.copyOf(threads, length);
+        workers = Arrays.copyOf(workers, length);
+    }
+
+    private CompactSplitTree seal() {
+        // the lookup maps are needed only while the tree is built
+        stringIndex.clear();
+        threadIndex.clear();
+        return this;
+    }
+
+    /**
+     * @return number of nodes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the ID of the root node
+     */
+    public int root() {
+        return size - 1;
+    }
+
+    /**
+     * @param id the node ID
+     * @return the new view positioned to the given node
+     */
+    public Node node(int id) {
+        return new Node(0).moveTo(id);
+    }
+
+    /**
+     * @return IDs of all the nodes in the ID order
+     */
+    public IntStream nodeIds() {
+        return IntStream.range(0, size);
+    }
+
+    /**
+     * @return IDs of the leaf nodes in the ID order
+     */
+    public IntStream leafIds() {
+        return nodeIds().filter(id -> !isSplit(id));
+    }
+
+    /**
+     * Performs the action for every node in the ID order passing the
+     * same view positioned to the subsequent nodes
+     * 
+     * @param action the action to perform; must not keep the view
+     */
+    public void forEach(Consumer<? super Node> action) {
+        Node node = new Node(0);
+        for (int id = 0; id < size; id++)
+            action.accept(node.moveTo(id));
+    }
+
+    /**
+     * Performs the action for every leaf in the ID order passing the
+     * same view positioned to the subsequent leafs
+     * 
+     * @param action the action to perform; must not keep the view
+     */
+    public void forEachLeaf(Consumer<? super Node> action) {
+        Node node = new Node(0);
+        for (int id = 0; id < size; id++) {
+            if (node.moveTo(id).isLeaf())
+                action.accept(node);
+        }
+    }
+
+    /**
+     * @return the time between the start of the earliest node and the end of
+     *         the latest node
+     */
+    public long totalNanos() {
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (int id = 0; id < size; id++) {
+            min = Math.min(min, starts[id >>> CHUNK_BITS][id & CHUNK_MASK]);
+            max = Math.max(max, ends[id >>> CHUNK_BITS][id & CHUNK_MASK]);
+        }
+        return max - min;
+    }
+
+    /**
+     * Materializes the ordinary split tree, so it can be analyzed and
+     * formatted with other tools
+     * 
+     * @return the split tree
+     */
+    public SplitTree toSplitTree() {
+        SplitNode[] nodes = new SplitNode[size];
+        Node view = new Node(0);
+        for (int id = 0; id < size; id++) {
+            view.moveTo(id);
+            LoadedSplitNode node = new LoadedSplitNode(view.getThreadName(), view.getCount());
+            if (view.isLeaf()) {
+                node.restoreValues(view.getFirst(), view.getLast() == null ? view.getFirst() : view.getLast(), view
+                        .getCount());
+            } else {
+                node.split(nodes[view.getLeft()], nodes[view.getRight()], view.getStartNanos());
+                node.update();
+                nodes[view.getLeft()] = nodes[view.getRight()] = null;
+            }
+            node.restore(view.getThreadId(), view.getWorkerIndex(), view.getStartNanos(), view.getEndNanos());
+            nodes[id] = node;
+        }
+        return new SplitTree(nodes[root()]);
+    }
+}
@@ -0,0 +1,285 @@
+package one.util.streamtools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * The result of the collector created by
+ * {@link SplitTree#profilingConcurrent(java.util.stream.Collector)}. The
+ * concurrent collectors have the single shared container and no combine tree,
+ * so instead of the {@link SplitTree} the per-thread accumulator statistics
+ * are recorded.
+ *
+ * @param <R> the type of the downstream collector result
+ */
+public class ConcurrentProfile<R> {
+    /**
+     * Consecutive accumulator calls separated by no more than this number of
+     * nanoseconds are merged into the single activity segment
+     */
+    static final long GAP_NANOS = 20_000;
+    private static final int DEFAULT_WIDTH = 120;
+    private static final char[] DENSITY = { ' ', '.', '-', '=', '#' };
+
+    private final R result;
+    private final long startNanos, endNanos;
+    private final List<ThreadProfile> threads;
+
+    /**
+     * The accumulator statistics of the single thread
+     */
+    public static class ThreadProfile {
+        private final String threadName;
+        private final int workerIndex;
+        private long count, nanos, maxNanos;
+        private long[] segments = new long[12];
+        private int size;
+
+        ThreadProfile() {
+            Thread thread = Thread.currentThread();
+            threadName = thread.getName();
+            workerIndex = thread instanceof ForkJoinWorkerThread ? ((ForkJoinWorkerThread) thread).getPoolIndex()
+                    : -1;
+        }
+
+        void record(long start, long end) {
+            long duration = end - start;
+            count++;
+            nanos += duration;
+            maxNanos = Math.max(maxNanos, duration);
+            if (size > 0 && start - segments[size - 2] <= GAP_NANOS) {
+                segments[size - 2] = end;
+                segments[size - 1] += duration;
+                return;
+            }
+            if (size + 3 > segments.length)
+                segments = Arrays.copyOf(segments, segments.length * 2);
+            segments[size++] = start;
+            segments[size++] = end;
+            segments[size++] = duration;
+        }
+
+        void merge(ThreadProfile other) {
+            count += other.count;
+            nanos += other.nanos;
+            maxNanos = Math.max(maxNanos, other.maxNanos);
+            segments = Arrays.copyOf(segments, size + other.size);
+            System.arraycopy(other.segments, 0, segments, size, other.size);
+            size += other.size;
+        }
+
+        /**
+         * @return the name of the thread
+         */
+        public String getThreadName() {
+            return threadName;
+        }
+
+        /**
+         * @return the index of the fork-join worker thread within its pool or
+         *         -1 if it's not a fork-join worker thread
+         */
+        public int getWorkerIndex() {
+            return workerIndex;
+        }
+
+        /**
+         * @return number of elements accumulated by this thread
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return total time spent by this thread in the shared accumulator
+         */
+        public long getAccumulatorNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return average time of the single accumulator call
+         */
+        public double getAverageNanos() {
+            return count == 0 ? 0 : (double) nanos / count;
+        }
+
+        /**
+         * @return the longest single accumulator call
+         */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%s: n=%d, accumulator: %d ns, avg: %.1f ns, max: %d ns",
+                threadName, count, nanos, getAverageNanos(), maxNanos);
+        }
+    }
+
+    /**
+     * The shared container of the profiling collector. The profiles are kept
+     * in the container rather than in the thread locals, so nothing is left
+     * in the pool threads after the collection.
+     */
+    static final class Recording<A> {
+        A container;
+        final long startNanos = System.nanoTime();
+        final Map<Thread, ThreadProfile> threads = new ConcurrentHashMap<>();
+
+        Recording(A container) {
+            this.container = container;
+        }
+
+        ThreadProfile profile() {
+            Thread thread = Thread.currentThread();
+            ThreadProfile profile = threads.get(thread);
+            return profile == null ? threads.computeIfAbsent(thread, t -> new ThreadProfile()) : profile;
+        }
+
+        Recording<A> combine(Recording<A> other, A container) {
+            this.container = container;
+            other.threads.forEach((thread, profile) -> threads.merge(thread, profile, (p1, p2) -> {
+                p1.merge(p2);
+                return p1;
+            }));
+            return this;
+        }
+    }
+
+    ConcurrentProfile(R result, long startNanos, long endNanos, Collection<ThreadProfile> profiles) {
+        this.result = result;
+        this.startNanos = startNanos;
+        this.endNanos = endNanos;
+        Map<String, ThreadProfile> byName = new TreeMap<>();
+        for (ThreadProfile profile : profiles) {
+            ThreadProfile existing = byName.putIfAbsent(profile.threadName, profile);
+            if (existing != null)
+                existing.merge(profile);
+        }
+        this.threads = Collections.unmodifiableList(new ArrayList<>(byName.values()));
+    }
+
+    /**
+     * @return the result of the downstream collector
+     */
+    public R result() {
+        return result;
+    }
+
+    /**
+     * @return the per-thread statistics sorted by the thread name
+     */
+    public List<ThreadProfile> threads() {
+        return threads;
+    }
+
+    /**
+     * @return the time between the container creation and the end of the
+     *         collection
+     */
+    public long totalNanos() {
+        return endNanos - startNanos;
+    }
+
+    /**
+     * @return total time spent in the shared accumulator by all the threads
+     */
+    public long accumulatorNanos() {
+        return threads.stream().mapToLong(ThreadProfile::getAccumulatorNanos).sum();
+    }
+
+    /**
+     * Estimates the contention on the shared container: the fraction of the
+     * accumulator time which exceeds the cost of the call observed on the
+     * thread with the cheapest calls. It's close to 0.0 when all the threads
+     * accumulate equally fast and approaches 1.0 when the threads mostly wait
+     * for each other. Always 0.0 if only one thread participated.
+     * 
+     * @return the contention estimate between 0.0 and 1.0
+     */
+    public double contention() {
+        long count = 0, nanos = 0;
+        ThreadProfile base = null;
+        for (ThreadProfile profile : threads) {
+            if (profile.count == 0)
+                continue;
+            count += profile.count;
+            nanos += profile.nanos;
+            if (base == null || profile.getAverageNanos() < base.getAverageNanos())
+                base = profile;
+        }
+        if (nanos == 0)
+            return 0.0;
+        // the products are compared rather than the averages, so the single
+        // thread yields exactly zero
+        return Math.max(0.0, 1.0 - ((double) base.nanos * count) / ((double) base.count * nanos));
+    }
+
+    /**
+     * @return the time line which fits into the default width
+     */
+    public List<String> asLines() {
+        return asLines(DEFAULT_WIDTH);
+    }
+
+    /**
+     * Formats the per-thread time line. Every character shows which fraction
+     * of the corresponding time quantum the thread spent in the accumulator:
+     * {@code ' '} for none, then {@code '.'}, {@code '-'}, {@code '='} for
+     * up to 25%, 50% and 75% and {@code '#'} for more.
+     * 
+     * @param width the maximal number of characters per time line
+     * @return the list of lines (one per thread)
+     */
+    public List<String> asLines(int width) {
+        if (width <= 0)
+            throw new IllegalArgumentException("width must be positive: " + width);
+        long quantum = totalNanos() / width + 1;
+        int length = (int) (totalNanos() / quantum) + 1;
+        int maxLen = threads.stream().mapToInt(t -> t.threadName.length()).max().orElse(0);
+        List<String> result = new ArrayList<>(threads.size());
+        for (ThreadProfile profile : threads) {
+            double[] busy = new double[length];
+            for (int i = 0; i < profile.size; i += 3) {
+                long start = Math.max(0, profile.segments[i] - startNanos);
+                long end = Math.min(totalNanos(), profile.segments[i + 1] - startNanos);
+                int from = (int) (start / quantum), to = (int) (end / quantum);
+                double perCell = (double) profile.segments[i + 2] / (to - from + 1);
+                for (int cell = from; cell <= to; cell++)
+                    busy[cell] += perCell;
+            }
+            StringBuilder sb = new StringBuilder(maxLen + 3 + length);
+            for (int i = profile.threadName.length(); i < maxLen; i++)
+                sb.append(' ');
+            sb.append(profile.threadName).append(" : ");
+            for (double nanos : busy) {
+                int level = nanos <= 0 ? 0 : Math.min(DENSITY.length - 1, 1 + (int) (nanos * 4 / quantum));
+                sb.append(DENSITY[level]);
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ENGLISH, "Total: %d ns, accumulator: %d ns, threads: %d, contention: %.2f%n",
+            totalNanos(), accumulatorNanos(), threads.size(), contention()));
+        for (ThreadProfile profile : threads)
+            sb.append("  ").append(profile).append(System.lineSeparator());
+        for (String line : asLines())
+            sb.append(line).append(System.lineSeparator());
+        return sb.toString();
+    }
+}
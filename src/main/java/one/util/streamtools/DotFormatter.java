@@ -0,0 +1,66 @@
+package one.util.streamtools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Exports the split hierarchy in Graphviz DOT format
+ */
+public class DotFormatter implements SplitTreeExporter {
+    private String format = "[%f..%l]\nSize: %c";
+    private String empty = "(empty)";
+
+    public DotFormatter nodeFormat(String nonEmpty, String empty) {
+        this.format = nonEmpty;
+        this.empty = empty;
+        return this;
+    }
+
+    @Override
+    public void writeTo(SplitTree tree, Writer writer) throws IOException {
+        writer.write("digraph SplitTree {\n");
+        writer.write("  node [shape=box, style=\"rounded,filled\", color=\"#223344\"];\n");
+        Deque<SplitNode> stack = new ArrayDeque<>();
+        Deque<Integer> parents = new ArrayDeque<>();
+        stack.push(tree.root());
+        parents.push(-1);
+        int id = 0;
+        while (!stack.isEmpty()) {
+            SplitNode node = stack.pop();
+            int parent = parents.pop();
+            writer.write("  n" + id + " [label=\"");
+            escape(writer, node.format(node.isEmpty() ? empty : format));
+            writer.write(node.isLeaf() ? "\", fillcolor=\"#EEDDAA\"];\n" : "\", fillcolor=\"#88CCDD\"];\n");
+            if (parent >= 0)
+                writer.write("  n" + parent + " -> n" + id + ";\n");
+            if (!node.isLeaf()) {
+                stack.push(node.getRight());
+                parents.push(id);
+                stack.push(node.getLeft());
+                parents.push(id);
+            }
+            id++;
+        }
+        writer.write("}\n");
+    }
+
+    private static void escape(Writer writer, String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+                writer.write('\\');
+                writer.write(c);
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            default:
+                writer.write(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package one.util.streamtools;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * {@link SplitNode} which collects {@code double} values without boxing and
+ * maintains their statistics. Can be used as a mutable container for
+ * {@link java.util.stream.DoubleStream#collect(java.util.function.Supplier, java.util.function.ObjDoubleConsumer, java.util.function.BiConsumer)}:
+ * 
+ * <pre>{@code
+ * DoubleSplitNode root = stream.parallel().collect(DoubleSplitNode::new, DoubleSplitNode::accept, DoubleSplitNode::merge);
+ * SplitTree tree = new SplitTree(root);
+ * }</pre>
+ */
+public class DoubleSplitNode extends SplitNode implements DoubleConsumer {
+    private double first, last;
+    private double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+    private double sum;
+
+    /**
+     * Creates an empty node which updates its end time on every element
+     */
+    public DoubleSplitNode() {
+    }
+
+    /**
+     * Creates an empty node which updates its end time once per
+     * {@code timeSampling} elements
+     * 
+     * @param timeSampling how often (in elements) the end time should be
+     *        updated; rounded up to the power of two
+     */
+    public DoubleSplitNode(int timeSampling) {
+        super(timeSampling);
+    }
+
+    @Override
+    public void accept(double value) {
+        if (isEmpty())
+            first = value;
+        last = value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sum += value;
+        advance();
+    }
+
+    /**
+     * Turns this node into the parent of its current content and the other
+     * node.
+     * 
+     * @param other the node which collected the elements following the
+     *        elements of this node
+     */
+    public void merge(DoubleSplitNode other) {
+        super.merge(other);
+    }
+
+    /**
+     * @return the minimal value collected in this node or
+     *         {@code Double.POSITIVE_INFINITY} if node is empty
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return the maximal value collected in this node or
+     *         {@code Double.NEGATIVE_INFINITY} if node is empty
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return the sum of values collected in this node
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the average of values collected in this node or zero if node is
+     *         empty
+     */
+    public double getAverage() {
+        return isEmpty() ? 0 : sum / getCount();
+    }
+
+    @Override
+    void joinValues(SplitNode l, SplitNode r) {
+        DoubleSplitNode left = (DoubleSplitNode) l, right = (DoubleSplitNode) r;
+        first = (left.isEmpty() ? right : left).first;
+        last = (right.isEmpty() ? left : right).last;
+        min = Math.min(left.min, right.min);
+        max = Math.max(left.max, right.max);
+        sum = left.sum + right.sum;
+    }
+
+    @Override
+    String firstString() {
+        return String.valueOf(first);
+    }
+
+    @Override
+    String lastString() {
+        return String.valueOf(last);
+    }
+}
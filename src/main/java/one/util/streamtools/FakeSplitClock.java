@@ -0,0 +1,40 @@
+package one.util.streamtools;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deterministic thread-safe {@link SplitClock} for tests: every reading
+ * returns the current time and advances it by the fixed step.
+ */
+public class FakeSplitClock implements SplitClock {
+    private final AtomicLong time;
+    private final long step;
+
+    /**
+     * @param start the time of the first reading
+     * @param step the number of nanoseconds to advance on every reading
+     */
+    public FakeSplitClock(long start, long step) {
+        this.time = new AtomicLong(start);
+        this.step = step;
+    }
+
+    @Override
+    public long nanoTime() {
+        return time.getAndAdd(step);
+    }
+
+    /**
+     * @param nanos the number of nanoseconds to advance the clock by
+     */
+    public void advance(long nanos) {
+        time.addAndGet(nanos);
+    }
+
+    /**
+     * @return the time which will be returned by the next reading
+     */
+    public long peek() {
+        return time.get();
+    }
+}
@@ -0,0 +1,506 @@
+package one.util.streamtools;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collector;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Observes the split tree while the stream is still running. The nodes
+ * created by {@link #collector()} publish their events (created, accumulated
+ * N elements, combined, finished) to the lock-free ring buffer, so the
+ * stream threads never block. The events are drained and applied to the
+ * partial tree model when the snapshot or the progress is requested.
+ *
+ * <pre>{@code
+ * LiveSplitMonitor monitor = new LiveSplitMonitor().expectedSize(data.size());
+ * monitor.register("ingest");
+ * SplitTree tree = data.parallelStream().map(...).collect(monitor.collector());
+ * }</pre>
+ *
+ * While the stream is running, the progress can be watched via JMX (for
+ * example, in JConsole) or requested programmatically via
+ * {@link #snapshot()} and {@link #getProgressView()}. If the events are
+ * published faster than they are drained, the oldest ones are lost (see
+ * {@link #getDroppedEvents()}), which may leave the snapshot incomplete. The
+ * processed element count is maintained separately and is always exact. The
+ * tree of the finished stream is forgotten once it's returned by the
+ * {@link #snapshot()}; if the snapshots are not requested, only the last
+ * {@value #MAX_FINISHED_TREES} finished trees are kept. The whole model is
+ * limited to {@link #maxNodes(int)} nodes (by default
+ * {@value #DEFAULT_MAX_NODES}): the oldest nodes are forgotten first, so the
+ * memory stays bounded even if the events finishing or combining the trees
+ * are lost or the streams never finish.
+ */
+public class LiveSplitMonitor implements LiveSplitMonitorMXBean {
+    /**
+     * The leaf is considered active if it reported the progress within this
+     * number of nanoseconds
+     */
+    public static final long ACTIVE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    /**
+     * The maximal number of the finished trees kept until the next snapshot
+     */
+    public static final int MAX_FINISHED_TREES = 16;
+    /**
+     * The default maximal number of the nodes kept in the partial tree model
+     */
+    public static final int DEFAULT_MAX_NODES = 1 << 20;
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int DEFAULT_REPORT_EVERY = 1024;
+
+    private final SplitClock clock;
+    private final SplitEventRing ring;
+    private final AtomicLong ids = new AtomicLong();
+    private final LongAdder processed = new LongAdder();
+    // the latest names of the threads seen since the last reset; the events
+    // carry the thread IDs only
+    private final Map<Long, String> threadNames = new ConcurrentHashMap<>();
+    private volatile long expectedSize = -1;
+    private volatile int reportEvery = DEFAULT_REPORT_EVERY;
+    private volatile int maxNodes = DEFAULT_MAX_NODES;
+    private ObjectName objectName;
+
+    // the partial tree model, guarded by this
+    private final TreeMap<Long, State> states = new TreeMap<>();
+    private final Deque<State> finishedTrees = new ArrayDeque<>();
+    private long firstNanos = Long.MAX_VALUE;
+
+    private static final class State {
+        final long id;
+        long threadId = -1, start, end, count;
+        int workerIndex = -1;
+        State left, right;
+        boolean combined, finished;
+        SplitNode node;
+
+        State(long id) {
+            this.id = id;
+        }
+
+        boolean isLeaf() {
+            return left == null;
+        }
+    }
+
+    /**
+     * The node rebuilt from the events. The element values are not published,
+     * so only the count is known.
+     */
+    private static final class SnapshotNode extends LoadedSplitNode {
+        SnapshotNode(String threadName, long weight) {
+            super(threadName, weight);
+        }
+
+        @Override
+        public String getFirst() {
+            return null;
+        }
+
+        @Override
+        public String getLast() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return isEmpty() ? "(empty)" : "(" + getCount() + ")";
+        }
+    }
+
+    /**
+     * Creates a monitor with the default ring buffer capacity
+     */
+    public LiveSplitMonitor() {
+        this(SplitClock.system(), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the maximal number of events kept between the drains;
+     *        rounded up to the power of two
+     */
+    public LiveSplitMonitor(int capacity) {
+        this(SplitClock.system(), capacity);
+    }
+
+    /**
+     * @param clock the clock to read the timestamps from
+     * @param capacity the maximal number of events kept between the drains;
+     *        rounded up to the power of two
+     */
+    public LiveSplitMonitor(SplitClock clock, int capacity) {
+        this.clock = clock;
+        this.ring = new SplitEventRing(capacity);
+    }
+
+    /**
+     * @param size the expected total number of elements used to estimate the
+     *        remaining time (-1 if unknown)
+     * @return this monitor
+     */
+    public LiveSplitMonitor expectedSize(long size) {
+        if (size < -1)
+            throw new IllegalArgumentException("size must be non-negative or -1: " + size);
+        this.expectedSize = size;
+        return this;
+    }
+
+    /**
+     * @param elements how often (in elements) the leafs report their progress
+     *        and update the end time; rounded up to the power of two. Affects
+     *        the collectors created afterwards.
+     * @return this monitor
+     */
+    public LiveSplitMonitor reportEvery(int elements) {
+        if (elements < 1)
+            throw new IllegalArgumentException("elements must be positive: " + elements);
+        this.reportEvery = elements;
+        return this;
+    }
+
+    /**
+     * @param nodes the maximal number of the nodes kept in the partial tree
+     *        model; when it's exceeded, the nodes created earliest are
+     *        forgotten
+     * @return this monitor
+     */
+    public LiveSplitMonitor maxNodes(int nodes) {
+        if (nodes < 1)
+            throw new IllegalArgumentException("nodes must be positive: " + nodes);
+        this.maxNodes = nodes;
+        return this;
+    }
+
+    /**
+     * Returns a collector which builds the split tree reporting its progress
+     * to this monitor. The same monitor may observe several streams at once:
+     * every stream forms a separate tree in the {@link #snapshot()}.
+     *
+     * @return the collector which builds the split tree
+     */
+    public Collector<Object, ?, SplitTree> collector() {
+        int every = reportEvery;
+        return Collector.of(() -> new LiveSplitNode(this, every), SplitNode::accept, SplitNode::combine,
+            this::finish);
+    }
+
+    private SplitTree finish(SplitNode root) {
+        root.finish();
+        finished((LiveSplitNode) root);
+        return new SplitTree(root);
+    }
+
+    SplitClock clock() {
+        return clock;
+    }
+
+    private void seen(SplitNode node) {
+        String name = node.getThreadName();
+        if (!name.equals(threadNames.get(node.getThreadId())))
+            threadNames.put(node.getThreadId(), name);
+    }
+
+    private String threadName(State state) {
+        String name = state.threadId == -1 ? null : threadNames.get(state.threadId);
+        return name == null ? "unknown" : name;
+    }
+
+    long created(LiveSplitNode node) {
+        seen(node);
+        long id = ids.incrementAndGet();
+        ring.publish(SplitEventRing.CREATED, id, -1, -1, 0, node.getThreadId(), node.getWorkerIndex(), node
+                .getStartNanos());
+        return id;
+    }
+
+    void accepted(LiveSplitNode node) {
+        processed.add(node.unreported());
+        ring.publish(SplitEventRing.ACCEPTED, node.id(), -1, -1, node.getCount(), node.getThreadId(), node
+                .getWorkerIndex(), node.getEndNanos());
+    }
+
+    long combined(LiveSplitNode parent, LiveSplitNode left, LiveSplitNode right) {
+        seen(parent);
+        long id = ids.incrementAndGet();
+        ring.publish(SplitEventRing.COMBINED, id, left.id(), right.id(), parent.getCount(), parent.getThreadId(),
+            parent.getWorkerIndex(), parent.getEndNanos());
+        return id;
+    }
+
+    void finished(LiveSplitNode root) {
+        processed.add(root.unreported());
+        ring.publish(SplitEventRing.FINISHED, root.id(), -1, -1, root.getCount(), root.getThreadId(), root
+                .getWorkerIndex(), root.getEndNanos());
+    }
+
+    private State state(long id) {
+        State state = states.get(id);
+        if (state == null) {
+            state = new State(id);
+            states.put(id, state);
+        }
+        return state;
+    }
+
+    private void apply(int kind, long node, long left, long right, long count, long threadId, int workerIndex,
+            long nanos) {
+        State state = state(node);
+        state.threadId = threadId;
+        state.workerIndex = workerIndex;
+        state.count = count;
+        state.end = nanos;
+        firstNanos = Math.min(firstNanos, nanos);
+        switch (kind) {
+        case SplitEventRing.CREATED:
+            state.start = nanos;
+            break;
+        case SplitEventRing.COMBINED:
+            state.start = nanos;
+            state.left = state(left);
+            state.right = state(right);
+            state.left.combined = state.right.combined = true;
+            break;
+        case SplitEventRing.FINISHED:
+            state.finished = true;
+            finishedTrees.add(state);
+            if (finishedTrees.size() > MAX_FINISHED_TREES)
+                evict(finishedTrees.peek());
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Forgets the tree of the finished stream
+     */
+    private void evict(State root) {
+        finishedTrees.remove(root);
+        Deque<State> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            State state = stack.pop();
+            states.remove(state.id);
+            if (!state.isLeaf()) {
+                stack.push(state.left);
+                stack.push(state.right);
+            }
+        }
+    }
+
+    private void drain() {
+        ring.drain(this::apply);
+        // the children are created before their parents, so the forgotten
+        // nodes are usually the subtrees of the finished or lost streams
+        int max = maxNodes;
+        while (states.size() > max) {
+            State state = states.pollFirstEntry().getValue();
+            if (state.finished)
+                finishedTrees.remove(state);
+            // the parent may still reference the state: don't let it retain
+            // the whole forgotten subtree
+            state.left = state.right = null;
+            state.node = null;
+        }
+    }
+
+    /**
+     * Rebuilds the partial split trees from the events published so far. The
+     * leaf counts may lag behind by up to {@code reportEvery} elements. The
+     * nodes have no element values and are labeled with their counts.
+     *
+     * @return the list of trees: one per stream (or per the uncombined part of
+     *         the stream still running), in the order of the node creation.
+     *         The trees of the finished streams are returned only once.
+     */
+    public synchronized List<SplitTree> snapshot() {
+        drain();
+        List<SplitTree> result = new ArrayList<>();
+        // the children ids are always less than the parent id
+        for (State state : states.values()) {
+            SplitNode node = new SnapshotNode(threadName(state), state.count);
+            SplitNode left = state.isLeaf() ? null : state.left.node;
+            SplitNode right = state.isLeaf() ? null : state.right.node;
+            // the node whose children are forgotten is shown as a leaf
+            if (left != null && right != null) {
+                node.split(left, right, state.start);
+                node.update();
+            } else {
+                node.restoreValues(null, null, state.count);
+            }
+            if (!state.isLeaf())
+                state.left.node = state.right.node = null;
+            node.restore(state.threadId, state.workerIndex, state.start, state.end);
+            state.node = node;
+        }
+        for (State state : states.values()) {
+            if (!state.combined) {
+                result.add(new SplitTree(state.node));
+                state.node = null;
+            }
+        }
+        while (!finishedTrees.isEmpty())
+            evict(finishedTrees.peek());
+        return result;
+    }
+
+    /**
+     * Forgets all the events received so far
+     */
+    public synchronized void reset() {
+        drain();
+        states.clear();
+        finishedTrees.clear();
+        threadNames.clear();
+        processed.reset();
+        firstNanos = Long.MAX_VALUE;
+    }
+
+    @Override
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    @Override
+    public long getExpectedSize() {
+        return expectedSize;
+    }
+
+    @Override
+    public synchronized int getLeafCount() {
+        drain();
+        int count = 0;
+        for (State state : states.values()) {
+            if (state.isLeaf())
+                count++;
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized int getActiveWorkers() {
+        drain();
+        long now = clock.nanoTime();
+        Set<Long> threads = new HashSet<>();
+        for (State state : states.values()) {
+            if (isActive(state, now))
+                threads.add(state.threadId);
+        }
+        return threads.size();
+    }
+
+    private static boolean isActive(State state, long now) {
+        return state.isLeaf() && !state.combined && !state.finished && now - state.end <= ACTIVE_NANOS;
+    }
+
+    @Override
+    public synchronized long getEstimatedRemainingNanos() {
+        drain();
+        long expected = expectedSize, done = processed.sum();
+        if (expected < 0 || done == 0 || firstNanos == Long.MAX_VALUE)
+            return -1;
+        double elapsed = clock.nanoTime() - firstNanos;
+        return (long) (Math.max(0, expected - done) * elapsed / done);
+    }
+
+    @Override
+    public synchronized long getDroppedEvents() {
+        drain();
+        return ring.dropped();
+    }
+
+    /**
+     * Returns the progress report: the processed and the expected element
+     * count, the estimated remaining time and the state of every leaf which
+     * is not combined yet (thread, worker index, element count and the time
+     * since its last report).
+     *
+     * @return the list of lines
+     */
+    @Override
+    public synchronized List<String> getProgressView() {
+        long remaining = getEstimatedRemainingNanos();
+        long done = processed.sum(), expected = expectedSize, now = clock.nanoTime();
+        List<String> lines = new ArrayList<>();
+        StringBuilder sb = new StringBuilder("Processed: ").append(done);
+        if (expected >= 0) {
+            sb.append(" of ").append(expected);
+            if (expected > 0)
+                sb.append(String.format(Locale.ENGLISH, " (%.1f%%)", done * 100.0 / expected));
+        }
+        if (remaining >= 0)
+            sb.append("; remaining: ~").append(TimeUnit.NANOSECONDS.toMillis(remaining)).append(" ms");
+        lines.add(sb.toString());
+        lines.add("Leafs: " + getLeafCount() + "; active workers: " + getActiveWorkers() + "; dropped events: "
+            + ring.dropped());
+        for (State state : states.values()) {
+            if (!state.isLeaf() || state.combined)
+                continue;
+            String thread = threadName(state);
+            if (state.workerIndex >= 0)
+                thread += " #" + state.workerIndex;
+            lines.add(String.format(Locale.ENGLISH, "  %s: %d elements, %s", thread, state.count, state.finished ? "finished"
+                    : isActive(state, now) ? "active" : "idle for " + TimeUnit.NANOSECONDS.toMillis(now
+                        - state.end) + " ms"));
+        }
+        return lines;
+    }
+
+    /**
+     * Registers this monitor on the platform MBean server, so the progress
+     * can be watched via JMX
+     *
+     * @param name the monitor name to distinguish several monitors
+     * @return the name the monitor is registered under
+     * @throws IllegalStateException if this monitor is already registered or
+     *         the registration fails
+     */
+    public synchronized ObjectName register(String name) {
+        if (objectName != null)
+            throw new IllegalStateException("Already registered as " + objectName);
+        try {
+            ObjectName on = new ObjectName("one.util.streamtools:type=LiveSplitMonitor,name=" + ObjectName.quote(
+                name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+            return on;
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Unregisters this monitor from the platform MBean server if it was
+     * registered
+     */
+    public synchronized void unregister() {
+        if (objectName == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.join("\n", getProgressView());
+    }
+}
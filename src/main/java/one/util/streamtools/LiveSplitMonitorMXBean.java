@@ -0,0 +1,48 @@
+package one.util.streamtools;
+
+import java.util.List;
+
+/**
+ * The management interface of {@link LiveSplitMonitor} exposed via JMX (see
+ * {@link LiveSplitMonitor#register(String)})
+ */
+public interface LiveSplitMonitorMXBean {
+    /**
+     * @return the number of elements accumulated so far
+     */
+    long getProcessedCount();
+
+    /**
+     * @return the expected total number of elements (or -1 if unknown)
+     */
+    long getExpectedSize();
+
+    /**
+     * @return the number of leafs in the trees kept by the monitor (the
+     *         trees of the finished streams are forgotten after the snapshot)
+     */
+    int getLeafCount();
+
+    /**
+     * @return the number of threads which accumulated elements within the
+     *         last {@link LiveSplitMonitor#ACTIVE_NANOS} nanoseconds
+     */
+    int getActiveWorkers();
+
+    /**
+     * @return the estimated time in nanoseconds until all the expected
+     *         elements are processed at the current rate (or -1 if the
+     *         expected size is unknown or nothing is processed yet)
+     */
+    long getEstimatedRemainingNanos();
+
+    /**
+     * @return the number of events lost due to the ring buffer overflow
+     */
+    long getDroppedEvents();
+
+    /**
+     * @return the human-readable progress report
+     */
+    List<String> getProgressView();
+}
@@ -0,0 +1,55 @@
+package one.util.streamtools;
+
+/**
+ * The split node created by {@link LiveSplitMonitor#collector()} which
+ * reports its progress to the monitor while the stream is running: once on
+ * creation, once per {@code reportEvery} accumulated elements (when the
+ * sampled end time is updated anyway) and on combine.
+ */
+final class LiveSplitNode extends SplitNode {
+    private final LiveSplitMonitor monitor;
+    private final int reportMask;
+    private long id, reported;
+
+    LiveSplitNode(LiveSplitMonitor monitor, int reportEvery) {
+        super(monitor.clock(), reportEvery);
+        this.monitor = monitor;
+        this.reportMask = reportEvery == 1 ? 0 : Integer.highestOneBit(Math.min(reportEvery - 1, 1 << 29)) * 2 - 1;
+        this.id = monitor.created(this);
+    }
+
+    long id() {
+        return id;
+    }
+
+    /**
+     * @return the number of elements not reported to the monitor yet; resets
+     *         the counter
+     */
+    long unreported() {
+        long delta = getCount() - reported;
+        reported = getCount();
+        return delta;
+    }
+
+    @Override
+    void accept(Object obj) {
+        super.accept(obj);
+        // the end time was just updated, so it's reported as is
+        if (((getCount() - 1) & reportMask) == 0)
+            monitor.accepted(this);
+    }
+
+    @Override
+    SplitNode combine(SplitNode that) {
+        LiveSplitNode right = (LiveSplitNode) that;
+        finish();
+        right.finish();
+        monitor.accepted(this);
+        monitor.accepted(right);
+        LiveSplitNode parent = (LiveSplitNode) super.combine(right);
+        parent.reported = parent.getCount();
+        parent.id = monitor.combined(parent, this, right);
+        return parent;
+    }
+}
@@ -0,0 +1,31 @@
+package one.util.streamtools;
+
+/**
+ * The split node read by {@link SplitTreeReader}: element values are stored
+ * as strings, the thread name and the weight are stored explicitly
+ */
+class LoadedSplitNode extends SplitNode {
+    private final String threadName;
+    private long weight;
+
+    LoadedSplitNode(String threadName, long weight) {
+        this.threadName = threadName;
+        this.weight = weight;
+    }
+
+    @Override
+    public String getThreadName() {
+        return threadName;
+    }
+
+    @Override
+    public long getWeight() {
+        return weight;
+    }
+
+    @Override
+    void joinValues(SplitNode l, SplitNode r) {
+        super.joinValues(l, r);
+        weight = l.getWeight() + r.getWeight();
+    }
+}
@@ -0,0 +1,111 @@
+package one.util.streamtools;
+
+import java.util.function.LongConsumer;
+
+/**
+ * {@link SplitNode} which collects {@code long} values without boxing and
+ * maintains their statistics. Can be used as a mutable container for
+ * {@link java.util.stream.LongStream#collect(java.util.function.Supplier, java.util.function.ObjLongConsumer, java.util.function.BiConsumer)}:
+ * 
+ * <pre>{@code
+ * LongSplitNode root = stream.parallel().collect(LongSplitNode::new, LongSplitNode::accept, LongSplitNode::merge);
+ * SplitTree tree = new SplitTree(root);
+ * }</pre>
+ */
+public class LongSplitNode extends SplitNode implements LongConsumer {
+    private long first, last;
+    private long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+    private long sum;
+
+    /**
+     * Creates an empty node which updates its end time on every element
+     */
+    public LongSplitNode() {
+    }
+
+    /**
+     * Creates an empty node which updates its end time once per
+     * {@code timeSampling} elements
+     * 
+     * @param timeSampling how often (in elements) the end time should be
+     *        updated; rounded up to the power of two
+     */
+    public LongSplitNode(int timeSampling) {
+        super(timeSampling);
+    }
+
+    @Override
+    public void accept(long value) {
+        if (isEmpty())
+            first = value;
+        last = value;
+        if (value < min)
+            min = value;
+        if (value > max)
+            max = value;
+        sum += value;
+        advance();
+    }
+
+    /**
+     * Turns this node into the parent of its current content and the other
+     * node.
+     * 
+     * @param other the node which collected the elements following the
+     *        elements of this node
+     */
+    public void merge(LongSplitNode other) {
+        super.merge(other);
+    }
+
+    /**
+     * @return the minimal value collected in this node or
+     *         {@code Long.MAX_VALUE} if node is empty
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * @return the maximal value collected in this node or
+     *         {@code Long.MIN_VALUE} if node is empty
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the sum of values collected in this node
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the average of values collected in this node or zero if node is
+     *         empty
+     */
+    public double getAverage() {
+        return isEmpty() ? 0 : (double) sum / getCount();
+    }
+
+    @Override
+    void joinValues(SplitNode l, SplitNode r) {
+        LongSplitNode left = (LongSplitNode) l, right = (LongSplitNode) r;
+        first = (left.isEmpty() ? right : left).first;
+        last = (right.isEmpty() ? left : right).last;
+        min = Math.min(left.min, right.min);
+        max = Math.max(left.max, right.max);
+        sum = left.sum + right.sum;
+    }
+
+    @Override
+    String firstString() {
+        return String.valueOf(first);
+    }
+
+    @Override
+    String lastString() {
+        return String.valueOf(last);
+    }
+}
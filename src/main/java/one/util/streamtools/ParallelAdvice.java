@@ -0,0 +1,156 @@
+package one.util.streamtools;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The result of {@link ParallelAdvisor}: sequential and parallel timings of
+ * the pipeline at different input sizes and the break-even size starting from
+ * which the parallel execution is faster.
+ */
+public class ParallelAdvice {
+    private final List<Entry> entries;
+
+    /**
+     * The measurements at the single input size
+     */
+    public static class Entry {
+        private final int size;
+        private final long sequentialNanos, parallelNanos;
+        private final SplitTree tree, recordedTree;
+
+        Entry(int size, long sequentialNanos, long parallelNanos, SplitTree tree, SplitTree recordedTree) {
+            this.size = size;
+            this.sequentialNanos = sequentialNanos;
+            this.parallelNanos = parallelNanos;
+            this.tree = tree;
+            this.recordedTree = recordedTree;
+        }
+
+        /**
+         * @return the input size
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return the median sequential execution time
+         */
+        public long getSequentialNanos() {
+            return sequentialNanos;
+        }
+
+        /**
+         * @return the median parallel execution time
+         */
+        public long getParallelNanos() {
+            return parallelNanos;
+        }
+
+        /**
+         * @return the sequential time divided by the parallel time: bigger
+         *         than 1.0 if the parallel execution is faster
+         */
+        public double getSpeedup() {
+            return parallelNanos == 0 ? 1.0 : (double) sequentialNanos / parallelNanos;
+        }
+
+        /**
+         * @return the time spent in combining the partial results during the
+         *         median parallel run
+         */
+        public long getCombineOverheadNanos() {
+            return tree.analyze().combineNanos();
+        }
+
+        /**
+         * @return the total time spent in the successful
+         *         {@link java.util.Spliterator#trySplit()} calls during the
+         *         recorded parallel run
+         */
+        public long getSplitOverheadNanos() {
+            return recordedTree.nodes().filter(node -> !node.isLeaf()).mapToLong(
+                node -> ((RecordedSplitNode) node).getSplitNanos()).sum();
+        }
+
+        /**
+         * @return the split tree of the median parallel run
+         */
+        public SplitTree getTree() {
+            return tree;
+        }
+
+        /**
+         * @return the tree of {@link RecordedSplitNode}s recorded by the
+         *         separate parallel run through {@link RecordingSpliterator}
+         */
+        public SplitTree getRecordedTree() {
+            return recordedTree;
+        }
+    }
+
+    ParallelAdvice(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return the measurements sorted by the input size
+     */
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * @return the smallest evaluated size starting from which the parallel
+     *         execution was faster at this and every bigger evaluated size,
+     *         or -1 if the parallel execution was not faster at the biggest
+     *         size
+     */
+    public int breakEvenSize() {
+        Entry entry = breakEvenEntry();
+        return entry == null ? -1 : entry.size;
+    }
+
+    /**
+     * @return the split tree of the parallel run at the break-even size or
+     *         null if there's no break-even size
+     */
+    public SplitTree breakEvenTree() {
+        Entry entry = breakEvenEntry();
+        return entry == null ? null : entry.tree;
+    }
+
+    private Entry breakEvenEntry() {
+        Entry result = null;
+        for (int i = entries.size() - 1; i >= 0 && entries.get(i).getSpeedup() > 1.0; i--)
+            result = entries.get(i);
+        return result;
+    }
+
+    /**
+     * @param size the actual input size
+     * @return true if the parallel execution is expected to be faster for
+     *         the given input size
+     */
+    public boolean recommendParallel(long size) {
+        int breakEven = breakEvenSize();
+        return breakEven >= 0 && size >= breakEven;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format(Locale.ENGLISH, "%10s %14s %14s %8s %12s %12s %6s%n",
+            "size", "sequential, us", "parallel, us", "speedup", "split, us", "combine, us", "leafs"));
+        for (Entry e : entries) {
+            sb.append(String.format(Locale.ENGLISH, "%10d %14.1f %14.1f %8.2f %12.1f %12.1f %6d%n", e.size,
+                e.sequentialNanos / 1000.0, e.parallelNanos / 1000.0, e.getSpeedup(), e.getSplitOverheadNanos()
+                    / 1000.0, e.getCombineOverheadNanos() / 1000.0, e.tree.leafs().count()));
+        }
+        int breakEven = breakEvenSize();
+        sb.append(breakEven < 0 ? "No break-even size: parallel execution is not faster" : "Break-even size: "
+            + breakEven).append(System.lineSeparator());
+        return sb.toString();
+    }
+}
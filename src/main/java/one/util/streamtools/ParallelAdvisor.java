@@ -0,0 +1,132 @@
+package one.util.streamtools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.IntFunction;
+import java.util.stream.BaseStream;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Measures whether the parallel execution pays off for the given pipeline at
+ * different input sizes. Every pipeline is run sequentially and in parallel
+ * collecting the elements into the split tree with the sampled timer, so both
+ * modes perform the same work. Additionally, one parallel run per size
+ * traverses the pipeline through {@link RecordingSpliterator} to measure the
+ * time spent in splitting; this run is not included into the timings, as it
+ * boxes the elements of primitive streams.
+ * 
+ * <pre>{@code
+ * ParallelAdvice advice = new ParallelAdvisor().evaluate(
+ *     n -> IntStream.range(0, n).map(x -> x * x), 100, 1_000, 10_000, 100_000);
+ * System.out.println(advice);
+ * boolean parallel = advice.recommendParallel(actualSize);
+ * }</pre>
+ */
+public class ParallelAdvisor {
+    static final int TIME_SAMPLING = 1024;
+
+    private int warmup = 5;
+    private int iterations = 15;
+
+    /**
+     * @param warmup number of runs in every mode to perform and discard before
+     *        the measurement
+     * @return this advisor
+     */
+    public ParallelAdvisor warmup(int warmup) {
+        if (warmup < 0)
+            throw new IllegalArgumentException("warmup must be non-negative: " + warmup);
+        this.warmup = warmup;
+        return this;
+    }
+
+    /**
+     * @param iterations number of measured runs in every mode
+     * @return this advisor
+     */
+    public ParallelAdvisor iterations(int iterations) {
+        if (iterations < 1)
+            throw new IllegalArgumentException("iterations must be positive: " + iterations);
+        this.iterations = iterations;
+        return this;
+    }
+
+    /**
+     * Evaluates the pipeline at the given input sizes
+     * 
+     * @param pipeline the function which creates a fresh stream (object, int,
+     *        long or double) of the given input size
+     * @param sizes the input sizes to evaluate
+     * @return the advice
+     */
+    public ParallelAdvice evaluate(IntFunction<? extends BaseStream<?, ?>> pipeline, int... sizes) {
+        int[] sorted = sizes.clone();
+        Arrays.sort(sorted);
+        List<ParallelAdvice.Entry> entries = new ArrayList<>();
+        for (int size : sorted) {
+            for (int i = 0; i < warmup; i++) {
+                run(pipeline.apply(size).sequential());
+                run(pipeline.apply(size).parallel());
+            }
+            long[] sequential = new long[iterations];
+            long[] parallel = new long[iterations];
+            SplitTree[] trees = new SplitTree[iterations];
+            // alternate the modes, so the drift of the machine load affects both
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                run(pipeline.apply(size).sequential());
+                sequential[i] = System.nanoTime() - start;
+                start = System.nanoTime();
+                trees[i] = run(pipeline.apply(size).parallel());
+                parallel[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(sequential);
+            int median = medianIndex(parallel);
+            SplitTree recorded = record(pipeline.apply(size).parallel().spliterator());
+            entries.add(new ParallelAdvice.Entry(size, sequential[iterations / 2], parallel[median], trees[median],
+                    recorded));
+        }
+        return new ParallelAdvice(entries);
+    }
+
+    private static int medianIndex(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        long median = sorted[sorted.length / 2];
+        for (int i = 0;; i++)
+            if (values[i] == median)
+                return i;
+    }
+
+    static SplitTree run(BaseStream<?, ?> stream) {
+        if (stream instanceof IntStream)
+            return finish(((IntStream) stream).collect(() -> new IntSplitNode(TIME_SAMPLING), IntSplitNode::accept,
+                IntSplitNode::merge));
+        if (stream instanceof LongStream)
+            return finish(((LongStream) stream).collect(() -> new LongSplitNode(TIME_SAMPLING),
+                LongSplitNode::accept, LongSplitNode::merge));
+        if (stream instanceof DoubleStream)
+            return finish(((DoubleStream) stream).collect(() -> new DoubleSplitNode(TIME_SAMPLING),
+                DoubleSplitNode::accept, DoubleSplitNode::merge));
+        return ((Stream<?>) stream).collect(SplitTree.collector(TIME_SAMPLING));
+    }
+
+    static <T> SplitTree record(Spliterator<T> source) {
+        RecordingSpliterator<T> spliterator = new RecordingSpliterator<>(source);
+        StreamSupport.stream(spliterator, true).forEach(t -> {
+            // only the splits are recorded
+        });
+        return spliterator.tree();
+    }
+
+    private static SplitTree finish(SplitNode root) {
+        root.finish();
+        return new SplitTree(root);
+    }
+}
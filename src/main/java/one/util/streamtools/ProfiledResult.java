@@ -0,0 +1,59 @@
+package one.util.streamtools;
+
+/**
+ * The result of the collector created by
+ * {@link SplitTree#profiling(java.util.stream.Collector)}: the result of the
+ * downstream collector and the split tree of {@link ProfiledSplitNode}s.
+ *
+ * @param <R> the type of the downstream collector result
+ */
+public class ProfiledResult<R> {
+    private final R result;
+    private final SplitTree tree;
+
+    ProfiledResult(R result, SplitTree tree) {
+        this.result = result;
+        this.tree = tree;
+    }
+
+    /**
+     * @return the result of the downstream collector
+     */
+    public R result() {
+        return result;
+    }
+
+    /**
+     * @return the split tree; all its nodes are {@link ProfiledSplitNode}s
+     */
+    public SplitTree tree() {
+        return tree;
+    }
+
+    /**
+     * @return the sum of the downstream accumulator time in all the leafs
+     */
+    public long accumulatorNanos() {
+        return tree.nodes().mapToLong(node -> ((ProfiledSplitNode) node).getAccumulatorNanos()).sum();
+    }
+
+    /**
+     * @return the sum of the downstream combiner time in all the nodes
+     */
+    public long combinerNanos() {
+        return tree.nodes().mapToLong(node -> ((ProfiledSplitNode) node).getCombinerNanos()).sum();
+    }
+
+    /**
+     * @return the downstream finisher time
+     */
+    public long finisherNanos() {
+        return ((ProfiledSplitNode) tree.root()).getFinisherNanos();
+    }
+
+    @Override
+    public String toString() {
+        return "Result: " + result + "\nAccumulator: " + accumulatorNanos() + " ns, combiner: " + combinerNanos()
+            + " ns, finisher: " + finisherNanos() + " ns\n" + tree;
+    }
+}
@@ -0,0 +1,118 @@
+package one.util.streamtools;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The split node created by {@link SplitTree#profiling(java.util.stream.Collector)}
+ * which additionally records the time spent in the functions of the
+ * downstream collector and the size of its intermediate container.
+ * 
+ * <p>
+ * Leaf nodes record the supplier and the accumulator time, splitting nodes
+ * record the combiner time and the root node also records the finisher time.
+ */
+public class ProfiledSplitNode extends SplitNode {
+    private Object container;
+    private long supplierNanos, accumulatorNanos, combinerNanos, finisherNanos;
+    private long containerSize = -1;
+
+    private ProfiledSplitNode(Object container, long supplierNanos) {
+        this.container = container;
+        this.supplierNanos = supplierNanos;
+    }
+
+    static ProfiledSplitNode create(Supplier<?> supplier) {
+        long start = System.nanoTime();
+        Object container = supplier.get();
+        return new ProfiledSplitNode(container, System.nanoTime() - start);
+    }
+
+    @SuppressWarnings("unchecked")
+    <A, T> void accept(T t, BiConsumer<A, ? super T> accumulator) {
+        long start = System.nanoTime();
+        accumulator.accept((A) container, t);
+        accumulatorNanos += System.nanoTime() - start;
+        accept(t);
+    }
+
+    @SuppressWarnings("unchecked")
+    <A> ProfiledSplitNode combine(ProfiledSplitNode that, BinaryOperator<A> combiner) {
+        containerSize = sizeOf(container);
+        that.containerSize = sizeOf(that.container);
+        ProfiledSplitNode p = (ProfiledSplitNode) combine(that);
+        p.supplierNanos = p.accumulatorNanos = 0;
+        long start = System.nanoTime();
+        p.container = combiner.apply((A) container, (A) that.container);
+        p.combinerNanos = System.nanoTime() - start;
+        p.complete();
+        container = that.container = null;
+        return p;
+    }
+
+    @SuppressWarnings("unchecked")
+    <A, R> R finish(Function<A, R> finisher) {
+        containerSize = sizeOf(container);
+        long start = System.nanoTime();
+        R result = finisher.apply((A) container);
+        finisherNanos = System.nanoTime() - start;
+        container = null;
+        return result;
+    }
+
+    private static long sizeOf(Object container) {
+        if (container instanceof Collection)
+            return ((Collection<?>) container).size();
+        if (container instanceof Map)
+            return ((Map<?, ?>) container).size();
+        if (container instanceof CharSequence)
+            return ((CharSequence) container).length();
+        return -1;
+    }
+
+    /**
+     * @return time spent in the downstream supplier creating the container of
+     *         this leaf (0 for splitting nodes)
+     */
+    public long getSupplierNanos() {
+        return supplierNanos;
+    }
+
+    /**
+     * @return total time spent in the downstream accumulator for this leaf (0
+     *         for splitting nodes)
+     */
+    public long getAccumulatorNanos() {
+        return accumulatorNanos;
+    }
+
+    /**
+     * @return time spent in the downstream combiner joining the containers of
+     *         the children (0 for leafs)
+     */
+    public long getCombinerNanos() {
+        return combinerNanos;
+    }
+
+    /**
+     * @return time spent in the downstream finisher (0 for all nodes except
+     *         the root)
+     */
+    public long getFinisherNanos() {
+        return finisherNanos;
+    }
+
+    /**
+     * @return the size of the intermediate container when this node was
+     *         completed or -1 if it's unknown. The size is known for
+     *         {@link Collection}, {@link Map} and {@link CharSequence}
+     *         containers.
+     */
+    public long getContainerSize() {
+        return containerSize;
+    }
+}
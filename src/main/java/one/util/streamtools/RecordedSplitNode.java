@@ -0,0 +1,118 @@
+package one.util.streamtools;
+
+import java.util.Spliterator;
+
+/**
+ * {@link SplitNode} created by {@link RecordingSpliterator} which additionally
+ * holds the information reported by the source spliterator. For the splitting
+ * node the information is captured right before the successful
+ * {@link Spliterator#trySplit()} call, for the leaf node it's captured right
+ * after the split which created it.
+ */
+public class RecordedSplitNode extends SplitNode {
+    private long estimatedSize;
+    private int characteristics;
+    private int failedSplits;
+
+    RecordedSplitNode(Spliterator<?> spliterator) {
+        capture(spliterator);
+    }
+
+    void capture(Spliterator<?> spliterator) {
+        this.estimatedSize = spliterator.estimateSize();
+        this.characteristics = spliterator.characteristics();
+    }
+
+    void capture(long estimatedSize, int characteristics) {
+        this.estimatedSize = estimatedSize;
+        this.characteristics = characteristics;
+    }
+
+    void splitFailed() {
+        failedSplits++;
+    }
+
+    /**
+     * @return the result of {@link Spliterator#estimateSize()} of the source
+     *         part corresponding to this node
+     */
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    /**
+     * @return true if the estimated size is equal to the number of elements
+     *         actually traversed
+     */
+    public boolean isEstimateExact() {
+        return estimatedSize == getCount();
+    }
+
+    /**
+     * @return the result of {@link Spliterator#characteristics()} of the
+     *         source part corresponding to this node
+     */
+    public int getCharacteristics() {
+        return characteristics;
+    }
+
+    /**
+     * @param characteristics the characteristics to check
+     * @return true if all the specified characteristics were reported by the
+     *         source part corresponding to this node
+     */
+    public boolean hasCharacteristics(int characteristics) {
+        return (this.characteristics & characteristics) == characteristics;
+    }
+
+    /**
+     * @return number of {@link Spliterator#trySplit()} calls which returned
+     *         null for the source part corresponding to this leaf node
+     */
+    public int getFailedSplits() {
+        return failedSplits;
+    }
+
+    /**
+     * @return number of nanoseconds spent in the successful
+     *         {@link Spliterator#trySplit()} call for splitting node or zero
+     *         for the leaf node
+     */
+    public long getSplitNanos() {
+        return isLeaf() ? 0 : getEndNanos() - getStartNanos();
+    }
+
+    /**
+     * @return the string representation of the characteristics recorded for
+     *         this node like {@code "ORDERED|SIZED|SUBSIZED"}
+     */
+    public String getCharacteristicsString() {
+        return characteristicsString(characteristics);
+    }
+
+    /**
+     * @param characteristics the spliterator characteristics
+     * @return the string representation of the characteristics like
+     *         {@code "ORDERED|SIZED|SUBSIZED"}
+     */
+    static String characteristicsString(int characteristics) {
+        StringBuilder sb = new StringBuilder();
+        append(sb, characteristics, Spliterator.ORDERED, "ORDERED");
+        append(sb, characteristics, Spliterator.DISTINCT, "DISTINCT");
+        append(sb, characteristics, Spliterator.SORTED, "SORTED");
+        append(sb, characteristics, Spliterator.SIZED, "SIZED");
+        append(sb, characteristics, Spliterator.NONNULL, "NONNULL");
+        append(sb, characteristics, Spliterator.IMMUTABLE, "IMMUTABLE");
+        append(sb, characteristics, Spliterator.CONCURRENT, "CONCURRENT");
+        append(sb, characteristics, Spliterator.SUBSIZED, "SUBSIZED");
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, int characteristics, int flag, String name) {
+        if ((characteristics & flag) != 0) {
+            if (sb.length() > 0)
+                sb.append('|');
+            sb.append(name);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package one.util.streamtools;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Spliterator which delegates to the source spliterator and records its
+ * splits into the tree of {@link RecordedSplitNode}s. Every successful
+ * {@link #trySplit()} turns the current leaf into the splitting node (which
+ * start and end time denote the duration of the source split) and every leaf
+ * collects the elements traversed from the corresponding part. Each node
+ * additionally keeps the size estimate and the characteristics reported by
+ * the source, so the split quality of custom spliterators can be diagnosed.
+ * 
+ * <pre>{@code
+ * RecordingSpliterator<T> spliterator = new RecordingSpliterator<>(mySpliterator);
+ * StreamSupport.stream(spliterator, true).forEach(...);
+ * SplitTree tree = spliterator.tree();
+ * }</pre>
+ * 
+ * @param <T> type of the elements
+ */
+public class RecordingSpliterator<T> implements Spliterator<T> {
+    private final Spliterator<T> source;
+    private final Recording recording;
+    private RecordedSplitNode node;
+    private boolean started, done;
+
+    private static class Recording {
+        final Function<Spliterator<?>, ? extends RecordedSplitNode> nodeFactory;
+        final RecordedSplitNode root;
+        final AtomicInteger pending = new AtomicInteger(1);
+        final AtomicBoolean reported = new AtomicBoolean();
+        final Consumer<? super SplitTree> consumer;
+
+        Recording(Spliterator<?> source, Function<Spliterator<?>, ? extends RecordedSplitNode> nodeFactory,
+                Consumer<? super SplitTree> consumer) {
+            this.nodeFactory = nodeFactory;
+            this.root = nodeFactory.apply(source);
+            this.consumer = consumer;
+        }
+
+        SplitTree tree() {
+            SplitTree tree = new SplitTree(root);
+            List<SplitNode> nodes = tree.nodes().collect(Collectors.toCollection(ArrayList::new));
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                SplitNode node = nodes.get(i);
+                if (!node.isLeaf())
+                    node.update();
+            }
+            return tree;
+        }
+
+        void report() {
+            if (reported.compareAndSet(false, true))
+                consumer.accept(tree());
+        }
+    }
+
+    /**
+     * Creates a recording spliterator. The recorded tree can be retrieved via
+     * {@link #tree()} after the traversal.
+     * 
+     * @param source the spliterator to delegate to
+     */
+    public RecordingSpliterator(Spliterator<T> source) {
+        this(source, tree -> {
+            // tree is requested explicitly
+        });
+    }
+
+    /**
+     * Creates a recording spliterator which passes the recorded tree to the
+     * supplied consumer once all the parts are traversed.
+     * 
+     * @param source the spliterator to delegate to
+     * @param consumer the consumer which receives the recorded tree
+     */
+    public RecordingSpliterator(Spliterator<T> source, Consumer<? super SplitTree> consumer) {
+        this(source, RecordedSplitNode::new, consumer);
+    }
+
+    /**
+     * Creates a recording spliterator which builds the tree of the nodes
+     * created by the supplied factory
+     * 
+     * @param source the spliterator to delegate to
+     * @param nodeFactory the function which creates the node for the given
+     *        part of the source
+     * @param consumer the consumer which receives the recorded tree
+     */
+    RecordingSpliterator(Spliterator<T> source, Function<Spliterator<?>, ? extends RecordedSplitNode> nodeFactory,
+            Consumer<? super SplitTree> consumer) {
+        this(source, new Recording(source, nodeFactory, consumer), null);
+        this.node = recording.root;
+    }
+
+    private RecordingSpliterator(Spliterator<T> source, Recording recording, RecordedSplitNode node) {
+        this.source = source;
+        this.recording = recording;
+        this.node = node;
+    }
+
+    /**
+     * Returns the tree recorded so far by this spliterator and all the
+     * spliterators split from it. The tree is complete only if all the parts
+     * were traversed (see {@link #isComplete()}); it should not be requested
+     * while the traversal is in progress.
+     * 
+     * @return the recorded tree
+     */
+    public SplitTree tree() {
+        return recording.tree();
+    }
+
+    /**
+     * @return true if all the parts split from the original spliterator were
+     *         completely traversed
+     */
+    public boolean isComplete() {
+        return recording.pending.get() == 0;
+    }
+
+    /**
+     * Reports the tree recorded so far unless it's already reported. Useful
+     * when some parts were not traversed completely (for example, due to
+     * short-circuiting terminal operation).
+     */
+    void report() {
+        recording.report();
+    }
+
+    private void start() {
+        if (!started) {
+            started = true;
+            node.begin();
+        }
+    }
+
+    private void finish() {
+        if (!done) {
+            done = true;
+            node.complete();
+            if (recording.pending.decrementAndGet() == 0)
+                recording.report();
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        start();
+        if (source.tryAdvance(t -> {
+            node.accept(t);
+            action.accept(t);
+        }))
+            return true;
+        finish();
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        start();
+        source.forEachRemaining(t -> {
+            node.accept(t);
+            action.accept(t);
+        });
+        finish();
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        RecordedSplitNode splitNode = node;
+        long estimatedSize = source.estimateSize();
+        int characteristics = source.characteristics();
+        long start = splitNode.nanoTime();
+        Spliterator<T> prefix = source.trySplit();
+        if (prefix == null) {
+            splitNode.splitFailed();
+            return null;
+        }
+        RecordedSplitNode left = recording.nodeFactory.apply(prefix);
+        RecordedSplitNode right = recording.nodeFactory.apply(source);
+        if (!splitNode.isEmpty()) {
+            // Elements traversed before the split precede the prefix
+            SplitNode traversed = splitNode.copy();
+            RecordedSplitNode inner = recording.nodeFactory.apply(prefix);
+            inner.capture(traversed.getCount() + left.getEstimatedSize(), left.getCharacteristics());
+            inner.split(traversed, left, start);
+            splitNode.split(inner, right, start);
+        } else {
+            splitNode.split(left, right, start);
+        }
+        splitNode.capture(estimatedSize, characteristics);
+        started = false;
+        node = right;
+        recording.pending.incrementAndGet();
+        return new RecordingSpliterator<>(prefix, recording, left);
+    }
+
+    @Override
+    public long estimateSize() {
+        return source.estimateSize();
+    }
+
+    @Override
+    public long getExactSizeIfKnown() {
+        return source.getExactSizeIfKnown();
+    }
+
+    @Override
+    public int characteristics() {
+        return source.characteristics();
+    }
+
+    @Override
+    public boolean hasCharacteristics(int characteristics) {
+        return source.hasCharacteristics(characteristics);
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+        return source.getComparator();
+    }
+}
@@ -0,0 +1,156 @@
+package one.util.streamtools;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * The split node created by {@link SplitTree#sampling(int, ToLongFunction)}
+ * which keeps the bounded uniform sample of the collected elements (reservoir
+ * sampling) and optionally the sum of the element weights.
+ */
+public class SampledSplitNode extends SplitNode {
+    private static final ThreadLocal<long[]> PENDING_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+    private static final ToLongFunction<Object> ELAPSED_WEIGHER = t -> {
+        long[] pending = PENDING_NANOS.get();
+        long nanos = pending[0];
+        pending[0] = 0;
+        return nanos;
+    };
+
+    private final ToLongFunction<Object> weigher;
+    private Object[] sample;
+    private int sampleLength;
+    private long weight;
+
+    @SuppressWarnings("unchecked")
+    SampledSplitNode(int sampleSize, ToLongFunction<?> weigher) {
+        if (sampleSize < 0)
+            throw new IllegalArgumentException("sampleSize must be non-negative: " + sampleSize);
+        this.sample = new Object[sampleSize];
+        this.weigher = (ToLongFunction<Object>) weigher;
+        // the time left over from the previous stream on this thread must not
+        // be charged to this node
+        if (weigher == ELAPSED_WEIGHER)
+            PENDING_NANOS.get()[0] = 0;
+    }
+
+    @Override
+    void accept(Object obj) {
+        if (weigher != null)
+            weight += weigher.applyAsLong(obj);
+        long count = getCount();
+        if (count < sample.length) {
+            sample[sampleLength++] = obj;
+        } else if (sample.length > 0) {
+            long pos = ThreadLocalRandom.current().nextLong(count + 1);
+            if (pos < sample.length)
+                sample[(int) pos] = obj;
+        }
+        super.accept(obj);
+    }
+
+    @Override
+    void joinValues(SplitNode l, SplitNode r) {
+        super.joinValues(l, r);
+        SampledSplitNode left = (SampledSplitNode) l, right = (SampledSplitNode) r;
+        weight = left.weight + right.weight;
+        int capacity = left.sample.length;
+        long total = left.getCount() + right.getCount();
+        int leftTake = total == 0 ? 0 : (int) Math.min(left.sampleLength, Math.round((double) capacity
+            * left.getCount() / total));
+        int rightTake = Math.min(right.sampleLength, capacity - leftTake);
+        leftTake = Math.min(left.sampleLength, capacity - rightTake);
+        sample = new Object[capacity];
+        pick(left, leftTake, 0);
+        pick(right, rightTake, leftTake);
+        sampleLength = leftTake + rightTake;
+    }
+
+    private void pick(SampledSplitNode from, int n, int offset) {
+        Object[] source = Arrays.copyOf(from.sample, from.sampleLength);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < n; i++) {
+            int j = i + random.nextInt(source.length - i);
+            Object tmp = source[j];
+            source[j] = source[i];
+            source[i] = tmp;
+        }
+        System.arraycopy(source, 0, sample, offset, n);
+    }
+
+    /**
+     * @return the uniform sample of the string representations of the
+     *         elements collected in this node (at most the sample size
+     *         specified on the collector creation). For the splitting nodes
+     *         the children samples are combined in proportion to their
+     *         element counts.
+     */
+    public List<String> getSample() {
+        Object[] values = sample;
+        int length = sampleLength;
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                if (index >= length)
+                    throw new IndexOutOfBoundsException(String.valueOf(index));
+                return String.valueOf(values[index]);
+            }
+
+            @Override
+            public int size() {
+                return length;
+            }
+        };
+    }
+
+    /**
+     * @return the sum of the element weights or the element count if no
+     *         weigher was specified
+     */
+    @Override
+    public long getWeight() {
+        return weigher == null ? getCount() : weight;
+    }
+
+    /**
+     * Wraps the mapping function, so its execution time is accumulated for
+     * the current thread and later consumed by {@link #elapsedWeigher()}. The
+     * function must be called in the same pipeline directly before the
+     * sampling collector.
+     * 
+     * @param <T> the type of the function input
+     * @param <R> the type of the function result
+     * @param mapper the function to time
+     * @return the timed function
+     */
+    public static <T, R> Function<T, R> timed(Function<? super T, ? extends R> mapper) {
+        return t -> {
+            long[] pending = PENDING_NANOS.get();
+            long start = System.nanoTime();
+            R result = mapper.apply(t);
+            pending[0] += System.nanoTime() - start;
+            return result;
+        };
+    }
+
+    /**
+     * Returns the weigher which weighs the element by the time spent by the
+     * current thread in the {@link #timed(Function)} functions since the
+     * previous element. The time accumulated before the node is created
+     * (for example, by another stream on the same thread) is discarded.
+     * 
+     * <pre>{@code
+     * SplitTree tree = data.parallelStream().map(SampledSplitNode.timed(this::process))
+     *         .collect(SplitTree.sampling(5, SampledSplitNode.elapsedWeigher()));
+     * }</pre>
+     * 
+     * @return the weigher which reports nanoseconds
+     */
+    public static ToLongFunction<Object> elapsedWeigher() {
+        return ELAPSED_WEIGHER;
+    }
+}
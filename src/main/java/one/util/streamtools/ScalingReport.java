@@ -0,0 +1,151 @@
+package one.util.streamtools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.LongSummaryStatistics;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Shows how the split tree and the wall time change with the parallelism
+ * level. Created by {@link #sweep(Supplier, int...)} which runs the same
+ * inspection inside the dedicated {@link ForkJoinPool} of every requested
+ * parallelism.
+ * 
+ * <pre>{@code
+ * ScalingReport report = ScalingReport.sweep(() -> SplitTree.inspect(IntStream.range(0, 1_000_000)));
+ * System.out.println(report);
+ * }</pre>
+ */
+public class ScalingReport {
+    private final List<Entry> entries;
+
+    /**
+     * The result of the inspection at the single parallelism level
+     */
+    public static class Entry {
+        private final int parallelism;
+        private final SplitTree tree;
+        private final long wallNanos;
+        private final LongSummaryStatistics leafSizes;
+        private final long workers;
+
+        Entry(int parallelism, SplitTree tree, long wallNanos) {
+            this.parallelism = parallelism;
+            this.tree = tree;
+            this.wallNanos = wallNanos;
+            this.leafSizes = tree.leafs().mapToLong(SplitNode::getCount).summaryStatistics();
+            this.workers = tree.nodes().mapToInt(SplitNode::getWorkerIndex).filter(idx -> idx >= 0).distinct()
+                    .count();
+        }
+
+        /**
+         * @return the parallelism of the pool
+         */
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        /**
+         * @return the recorded tree
+         */
+        public SplitTree getTree() {
+            return tree;
+        }
+
+        /**
+         * @return the wall time of the inspection
+         */
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * @return statistics of the number of elements in the leaf nodes
+         */
+        public LongSummaryStatistics getLeafSizes() {
+            return leafSizes;
+        }
+
+        /**
+         * @return number of distinct pool workers which processed the nodes
+         */
+        public long getWorkers() {
+            return workers;
+        }
+    }
+
+    private ScalingReport(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Runs the inspection at parallelism levels 1, 2, 4, ... up to the number
+     * of available processors
+     * 
+     * @param inspection the supplier which creates and runs a fresh stream
+     *        and returns its tree (for example,
+     *        {@code () -> SplitTree.inspect(IntStream.range(0, n))}); it's
+     *        called once per parallelism level, so the stream must be
+     *        created inside it
+     * @return the report
+     */
+    public static ScalingReport sweep(Supplier<SplitTree> inspection) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        List<Integer> levels = new ArrayList<>();
+        for (int p = 1; p < processors; p *= 2)
+            levels.add(p);
+        levels.add(processors);
+        return sweep(inspection, levels.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Runs the inspection at given parallelism levels
+     * 
+     * @param inspection the supplier which creates and runs a fresh stream
+     *        and returns its tree (for example,
+     *        {@code () -> SplitTree.inspect(IntStream.range(0, n))}); it's
+     *        called once per parallelism level, so the stream must be
+     *        created inside it
+     * @param parallelism the parallelism levels to run with
+     * @return the report
+     */
+    public static ScalingReport sweep(Supplier<SplitTree> inspection, int... parallelism) {
+        List<Entry> entries = new ArrayList<>();
+        for (int p : parallelism) {
+            ForkJoinPool pool = new ForkJoinPool(p);
+            try {
+                entries.add(pool.submit(() -> {
+                    long start = System.nanoTime();
+                    SplitTree tree = inspection.get();
+                    return new Entry(p, tree, System.nanoTime() - start);
+                }).join());
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return new ScalingReport(entries);
+    }
+
+    /**
+     * @return the entries in the order of requested parallelism levels
+     */
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format(Locale.ENGLISH, "%11s %7s %6s %10s %10s %12s %7s%n",
+            "parallelism", "workers", "leafs", "avg leaf", "max leaf", "wall, us", "speedup"));
+        long base = entries.isEmpty() ? 0 : entries.get(0).wallNanos;
+        for (Entry e : entries) {
+            sb.append(String.format(Locale.ENGLISH, "%11d %7d %6d %10.1f %10d %12.1f %7.2f%n", e.parallelism,
+                e.workers, e.leafSizes.getCount(), e.leafSizes.getAverage(), e.leafSizes.getMax(),
+                e.wallNanos / 1000.0, (double) base / e.wallNanos));
+        }
+        return sb.toString();
+    }
+}
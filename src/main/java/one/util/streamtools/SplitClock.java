@@ -0,0 +1,55 @@
+package one.util.streamtools;
+
+/**
+ * The source of timestamps for the split nodes. All the timestamps of the
+ * single tree must come from the same clock.
+ */
+public interface SplitClock {
+    /**
+     * @return the current time in nanoseconds relative to an arbitrary origin
+     *         (like {@link System#nanoTime()})
+     */
+    long nanoTime();
+
+    /**
+     * @return the clock which delegates to {@link System#nanoTime()}
+     */
+    static SplitClock system() {
+        return SystemClock.INSTANCE;
+    }
+
+    /**
+     * Creates a coarse clock which reads {@link System#nanoTime()} in a
+     * background daemon thread, so reading the time is just a volatile read.
+     * The clock should be closed when it's not necessary anymore.
+     * 
+     * @param resolutionNanos how often the background thread updates the time
+     * @return the started clock
+     */
+    static CachedSplitClock cached(long resolutionNanos) {
+        return new CachedSplitClock(resolutionNanos);
+    }
+
+    /**
+     * Creates a deterministic clock for tests which starts at 0 and advances
+     * by the given step on every reading
+     * 
+     * @param step the number of nanoseconds to advance on every reading
+     * @return the fake clock
+     */
+    static FakeSplitClock fake(long step) {
+        return new FakeSplitClock(0, step);
+    }
+
+    /**
+     * The clock which delegates to {@link System#nanoTime()}
+     */
+    enum SystemClock implements SplitClock {
+        INSTANCE;
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package one.util.streamtools;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free multi-producer ring buffer of the fixed-size split node events.
+ * Producers claim a sequence number with a single atomic increment: when the
+ * consumer falls behind, the oldest events are overwritten and counted as
+ * dropped on the next drain. The producer takes the slot by a CAS from the
+ * sequence number published there to the writing mark, so only one producer
+ * writes the slot at a time and the consumer detects the slot overwritten
+ * while it was read. The producer which finds a newer event in its slot
+ * (it was lapped) drops its own event; it waits only while another producer
+ * is writing the same slot, which is possible only when the buffer
+ * overflows. The events must be drained by a single thread at a time.
+ */
+final class SplitEventRing {
+    static final int CREATED = 1, ACCEPTED = 2, COMBINED = 3, FINISHED = 4;
+    private static final int STRIDE_BITS = 3;
+    private static final long WRITING = -2;
+    private static final int KIND = 0, NODE = 1, LEFT = 2, RIGHT = 3, COUNT = 4, THREAD = 5, WORKER = 6, NANOS = 7;
+
+    interface EventSink {
+        void accept(int kind, long node, long left, long right, long count, long threadId, int workerIndex,
+                long nanos);
+    }
+
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLongArray published;
+    private final AtomicLongArray data;
+    private long readSeq, dropped;
+
+    /**
+     * @param capacity the maximal number of undrained events; rounded up to
+     *        the power of two
+     */
+    SplitEventRing(int capacity) {
+        if (capacity < 1 || capacity > 1 << 24)
+            throw new IllegalArgumentException("capacity must be between 1 and " + (1 << 24) + ": " + capacity);
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) * 2;
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            published.set(i, -1);
+        this.data = new AtomicLongArray(size << STRIDE_BITS);
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    void publish(int kind, long node, long left, long right, long count, long threadId, int workerIndex,
+            long nanos) {
+        long seq = next.getAndIncrement();
+        int slot = (int) (seq & mask), base = slot << STRIDE_BITS;
+        while (true) {
+            long current = published.get(slot);
+            if (current >= seq)
+                return;
+            if (current == WRITING)
+                Thread.yield();
+            else if (published.compareAndSet(slot, current, WRITING))
+                break;
+        }
+        data.set(base + KIND, kind);
+        data.set(base + NODE, node);
+        data.set(base + LEFT, left);
+        data.set(base + RIGHT, right);
+        data.set(base + COUNT, count);
+        data.set(base + THREAD, threadId);
+        data.set(base + WORKER, workerIndex);
+        data.set(base + NANOS, nanos);
+        published.set(slot, seq);
+    }
+
+    /**
+     * Passes all the events published since the previous drain to the sink.
+     * Stops at the first event which is not completely written yet.
+     *
+     * @param sink the sink to pass the events to
+     */
+    void drain(EventSink sink) {
+        long end = next.get();
+        if (end - readSeq > capacity()) {
+            dropped += end - capacity() - readSeq;
+            readSeq = end - capacity();
+        }
+        while (readSeq < end) {
+            int slot = (int) (readSeq & mask), base = slot << STRIDE_BITS;
+            long seq = published.get(slot);
+            if (seq < readSeq)
+                break;
+            if (seq == readSeq) {
+                int kind = (int) data.get(base + KIND);
+                long node = data.get(base + NODE), left = data.get(base + LEFT), right = data.get(base + RIGHT);
+                long count = data.get(base + COUNT), threadId = data.get(base + THREAD);
+                int workerIndex = (int) data.get(base + WORKER);
+                long nanos = data.get(base + NANOS);
+                if (published.get(slot) == seq) {
+                    sink.accept(kind, node, left, right, count, threadId, workerIndex, nanos);
+                    readSeq++;
+                    continue;
+                }
+            }
+            dropped++;
+            readSeq++;
+        }
+    }
+
+    /**
+     * @return the number of events overwritten before they were drained
+     */
+    long dropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,341 @@
+package one.util.streamtools;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Collector.Characteristics;
+
+/**
+ * Aggregated split metrics for the long-running production pipelines. Unlike
+ * the {@link SplitTree} the memory footprint is fixed: only striped counters
+ * and log2 histograms are updated, so the same instance can be shared by
+ * millions of streams.
+ * 
+ * <pre>{@code
+ * static final SplitMetrics METRICS = new SplitMetrics();
+ * ...
+ * List<String> result = data.parallelStream().map(...)
+ *         .collect(SplitMetrics.collector(METRICS, Collectors.toList()));
+ * }</pre>
+ */
+public class SplitMetrics implements SplitMetricsListener {
+    /**
+     * Maximal number of the fork-join workers tracked separately. Workers
+     * with bigger indices share the counters modulo this value.
+     */
+    public static final int MAX_WORKERS = 64;
+    // the worker counters are placed 128 bytes apart, so the workers don't
+    // write the same cache line
+    private static final int WORKER_STRIDE = 16;
+    // the leaf end time is read once per this number of elements
+    private static final int END_TIME_MASK = 63;
+
+    private final LongAdder streams = new LongAdder();
+    private final LongAdder leafs = new LongAdder();
+    private final LongAdder combines = new LongAdder();
+    private final LongAdder elements = new LongAdder();
+    private final LongAdder externalLeafs = new LongAdder();
+    private final AtomicLongArray workerLeafs = new AtomicLongArray(MAX_WORKERS * WORKER_STRIDE);
+    private final Histogram leafNanos = new Histogram();
+    private final Histogram leafSizes = new Histogram();
+    private final Histogram combineNanos = new Histogram();
+    private final Histogram streamNanos = new Histogram();
+
+    /**
+     * Lock-free histogram with fixed power-of-two buckets. The bucket 0 holds
+     * zero values, the bucket {@code i > 0} holds values from
+     * {@code 2^(i-1)} to {@code 2^i-1}.
+     */
+    public static class Histogram {
+        /**
+         * Number of buckets
+         */
+        public static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+
+        static int bucket(long value) {
+            return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, value)));
+        }
+
+        /**
+         * @param value the non-negative value to record
+         */
+        public void record(long value) {
+            buckets.incrementAndGet(bucket(value));
+            sum.add(value);
+        }
+
+        /**
+         * @param bucket the bucket index
+         * @return number of values recorded in given bucket
+         */
+        public long getBucketCount(int bucket) {
+            return buckets.get(bucket);
+        }
+
+        /**
+         * @return total number of values recorded
+         */
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++)
+                count += buckets.get(i);
+            return count;
+        }
+
+        /**
+         * @return sum of all the recorded values
+         */
+        public long getSum() {
+            return sum.sum();
+        }
+
+        /**
+         * @return average of the recorded values or 0 if nothing was recorded
+         */
+        public double getAverage() {
+            long count = getCount();
+            return count == 0 ? 0 : (double) getSum() / count;
+        }
+
+        /**
+         * @param percentile the percentile between 0 and 100
+         * @return the upper bound of the bucket containing given percentile or
+         *         0 if nothing was recorded
+         */
+        public long getPercentile(double percentile) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++)
+                total += counts[i] = buckets.get(i);
+            long rank = (long) Math.ceil(percentile / 100 * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0)
+                    return i == 0 ? 0 : i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+            }
+            return 0;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++)
+                buckets.set(i, 0);
+            sum.reset();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "n=%d, avg=%.1f, p50<=%d, p90<=%d, p99<=%d", getCount(),
+                getAverage(), getPercentile(50), getPercentile(90), getPercentile(99));
+        }
+    }
+
+    static final class Box<A> {
+        A container;
+        long count;
+        long start = System.nanoTime();
+        long end = start;
+        final int workerIndex = workerIndex();
+        boolean leaf = true;
+
+        Box(A container) {
+            this.container = container;
+        }
+    }
+
+    static int workerIndex() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof ForkJoinWorkerThread ? ((ForkJoinWorkerThread) thread).getPoolIndex() : -1;
+    }
+
+    /**
+     * Creates a collector which collects the elements using the downstream
+     * collector and reports the split events to the listener. The
+     * {@link Characteristics#CONCURRENT CONCURRENT} characteristic of the
+     * downstream collector is dropped, as the partial results must be
+     * combined to be observed.
+     * 
+     * @param <T> the type of the input elements
+     * @param <A> the downstream accumulation type
+     * @param <R> the result type
+     * @param listener the listener to report events to
+     * @param downstream the collector to collect the elements with
+     * @return the collector
+     */
+    public static <T, A, R> Collector<T, ?, R> collector(SplitMetricsListener listener,
+            Collector<T, A, R> downstream) {
+        Supplier<A> supplier = downstream.supplier();
+        BiConsumer<A, ? super T> accumulator = downstream.accumulator();
+        BinaryOperator<A> combiner = downstream.combiner();
+        Function<A, R> finisher = downstream.finisher();
+        Set<Characteristics> characteristics = downstream.characteristics().contains(Characteristics.UNORDERED)
+                ? EnumSet.of(Characteristics.UNORDERED) : Collections.emptySet();
+        return Collector.of(() -> new Box<>(supplier.get()), (Box<A> box, T t) -> {
+            accumulator.accept(box.container, t);
+            // the leaf may wait for its sibling before it's combined, so the
+            // end of the accumulation is recorded here (sampled)
+            if ((box.count++ & END_TIME_MASK) == 0)
+                box.end = System.nanoTime();
+        }, (a, b) -> {
+            long start = System.nanoTime();
+            int worker = workerIndex();
+            if (a.leaf)
+                listener.onLeaf(a.count, a.end - a.start, a.workerIndex);
+            if (b.leaf)
+                listener.onLeaf(b.count, b.end - b.start, b.workerIndex);
+            Box<A> result = new Box<>(combiner.apply(a.container, b.container));
+            // the stream duration is measured from the creation of the first leaf
+            result.start = Math.min(a.start, b.start);
+            result.leaf = false;
+            result.count = a.count + b.count;
+            listener.onCombine(result.count, System.nanoTime() - start, worker);
+            return result;
+        }, box -> {
+            if (box.leaf)
+                listener.onLeaf(box.count, System.nanoTime() - box.start, box.workerIndex);
+            R result = finisher.apply(box.container);
+            listener.onComplete(box.count, System.nanoTime() - box.start);
+            return result;
+        }, characteristics.toArray(new Characteristics[0]));
+    }
+
+    @Override
+    public void onLeaf(long size, long nanos, int workerIndex) {
+        leafs.increment();
+        leafSizes.record(size);
+        leafNanos.record(nanos);
+        if (workerIndex < 0)
+            externalLeafs.increment();
+        else
+            workerLeafs.incrementAndGet(workerIndex % MAX_WORKERS * WORKER_STRIDE);
+    }
+
+    @Override
+    public void onCombine(long size, long nanos, int workerIndex) {
+        combines.increment();
+        combineNanos.record(nanos);
+    }
+
+    @Override
+    public void onComplete(long size, long nanos) {
+        streams.increment();
+        elements.add(size);
+        streamNanos.record(nanos);
+    }
+
+    /**
+     * @return number of completed streams
+     */
+    public long getStreams() {
+        return streams.sum();
+    }
+
+    /**
+     * @return number of leafs in all the streams
+     */
+    public long getLeafs() {
+        return leafs.sum();
+    }
+
+    /**
+     * @return number of combine operations in all the streams
+     */
+    public long getCombines() {
+        return combines.sum();
+    }
+
+    /**
+     * @return number of elements in all the completed streams
+     */
+    public long getElements() {
+        return elements.sum();
+    }
+
+    /**
+     * @param workerIndex the fork-join pool worker index or -1 for the leafs
+     *        created outside of fork-join pools
+     * @return number of leafs created by given worker
+     */
+    public long getWorkerLeafs(int workerIndex) {
+        return workerIndex < 0 ? externalLeafs.sum() : workerLeafs.get(workerIndex % MAX_WORKERS
+            * WORKER_STRIDE);
+    }
+
+    /**
+     * @return the histogram of leaf durations in nanoseconds
+     */
+    public Histogram leafNanos() {
+        return leafNanos;
+    }
+
+    /**
+     * @return the histogram of leaf sizes
+     */
+    public Histogram leafSizes() {
+        return leafSizes;
+    }
+
+    /**
+     * @return the histogram of combine durations in nanoseconds
+     */
+    public Histogram combineNanos() {
+        return combineNanos;
+    }
+
+    /**
+     * @return the histogram of whole stream durations in nanoseconds
+     */
+    public Histogram streamNanos() {
+        return streamNanos;
+    }
+
+    /**
+     * Resets all the counters. Events reported concurrently with the reset
+     * may be partially lost.
+     */
+    public void reset() {
+        streams.reset();
+        leafs.reset();
+        combines.reset();
+        elements.reset();
+        externalLeafs.reset();
+        for (int i = 0; i < MAX_WORKERS; i++)
+            workerLeafs.set(i * WORKER_STRIDE, 0);
+        leafNanos.reset();
+        leafSizes.reset();
+        combineNanos.reset();
+        streamNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ENGLISH, "Streams: %d, elements: %d, leafs: %d, combines: %d%n",
+            getStreams(), getElements(), getLeafs(), getCombines()));
+        sb.append("Stream ns: ").append(streamNanos).append(System.lineSeparator());
+        sb.append("Leaf ns: ").append(leafNanos).append(System.lineSeparator());
+        sb.append("Leaf size: ").append(leafSizes).append(System.lineSeparator());
+        sb.append("Combine ns: ").append(combineNanos).append(System.lineSeparator());
+        sb.append("Leafs per worker:");
+        if (externalLeafs.sum() > 0)
+            sb.append(" external=").append(externalLeafs.sum());
+        for (int i = 0; i < MAX_WORKERS; i++) {
+            long count = workerLeafs.get(i * WORKER_STRIDE);
+            if (count > 0)
+                sb.append(' ').append(i).append('=').append(count);
+        }
+        return sb.append(System.lineSeparator()).toString();
+    }
+}
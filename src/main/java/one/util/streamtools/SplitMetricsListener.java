@@ -0,0 +1,46 @@
+package one.util.streamtools;
+
+/**
+ * Receives the split events from the collector created by
+ * {@link SplitMetrics#collector(SplitMetricsListener, java.util.stream.Collector)}.
+ * No tree is kept: every event is reported once and then forgotten, so the
+ * listener decides how much memory is used. Methods may be called
+ * concurrently from different threads.
+ */
+public interface SplitMetricsListener {
+    /**
+     * Called when the leaf accumulation is finished
+     * 
+     * @param size number of elements accumulated
+     * @param nanos time between the leaf creation and the end of its
+     *        accumulation; the end time is read once per 64 elements, so up
+     *        to 63 last elements may be missed (the time spent waiting for
+     *        the sibling to combine with is not included)
+     * @param workerIndex the pool index of the fork-join worker thread which
+     *        created the leaf or -1 if it was not a fork-join worker thread
+     */
+    default void onLeaf(long size, long nanos, int workerIndex) {
+    }
+
+    /**
+     * Called after two partial results are combined
+     * 
+     * @param size total number of elements in the combined result
+     * @param nanos time spent in the downstream combiner
+     * @param workerIndex the pool index of the fork-join worker thread which
+     *        performed the combining or -1 if it was not a fork-join worker
+     *        thread
+     */
+    default void onCombine(long size, long nanos, int workerIndex) {
+    }
+
+    /**
+     * Called once when the stream is finished
+     * 
+     * @param size total number of elements
+     * @param nanos time between the creation of the first leaf and the end of
+     *        the finisher
+     */
+    default void onComplete(long size, long nanos) {
+    }
+}
@@ -1,32 +1,117 @@
 package one.util.streamtools;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Stream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 /**
  * Represents either intermediate or terminal split tree node
  * 
  * @author Tagir Valeev
  */
-public class SplitNode {
-    private String first, last;
+public class SplitNode implements Cloneable {
+    private Object first, last;
     private SplitNode left, right;
     private long count;
-    private final long start = System.nanoTime();
-    private long end = start;
-    private String threadName = Thread.currentThread().getName();
+    private final SplitClock clock;
+    private long start;
+    private long end;
+    private ThreadIdentity thread;
+    private int workerIndex;
+    private int timeMask;
+
+    SplitNode() {
+        this(SplitClock.system());
+    }
+
+    /**
+     * @param clock the clock to read the timestamps from
+     */
+    SplitNode(SplitClock clock) {
+        this.clock = clock;
+        this.start = this.end = clock.nanoTime();
+        recordThread();
+    }
+
+    /**
+     * @param timeSampling how often (in elements) the end time should be
+     *        updated during accumulation; rounded up to the power of two
+     */
+    SplitNode(int timeSampling) {
+        this(SplitClock.system(), timeSampling);
+    }
+
+    /**
+     * @param clock the clock to read the timestamps from
+     * @param timeSampling how often (in elements) the end time should be
+     *        updated during accumulation; rounded up to the power of two
+     */
+    SplitNode(SplitClock clock, int timeSampling) {
+        this(clock);
+        if (timeSampling < 1)
+            throw new IllegalArgumentException("timeSampling must be positive: " + timeSampling);
+        this.timeMask = timeSampling == 1 ? 0 : Integer.highestOneBit(Math.min(timeSampling - 1, 1 << 29)) * 2 - 1;
+    }
+
+    private void recordThread() {
+        Thread current = Thread.currentThread();
+        thread = ThreadIdentity.of(current);
+        if (current instanceof ForkJoinWorkerThread) {
+            workerIndex = ((ForkJoinWorkerThread) current).getPoolIndex();
+        } else {
+            workerIndex = -1;
+        }
+    }
+
+    void replaceThread(ThreadIdentity stale, ThreadIdentity fresh) {
+        if (thread == stale)
+            thread = fresh;
+    }
+
+    /**
+     * Restores the thread and the timing of the node read from the external
+     * storage
+     */
+    void restore(long threadId, int workerIndex, long startNanos, long endNanos) {
+        this.thread = ThreadIdentity.unknown(threadId);
+        this.workerIndex = workerIndex;
+        this.start = startNanos;
+        this.end = endNanos;
+    }
+
+    /**
+     * Restores the values of the leaf node read from the external storage
+     */
+    void restoreValues(Object first, Object last, long count) {
+        this.first = first;
+        this.last = last;
+        this.count = count;
+    }
 
     void accept(Object obj) {
-        if (first == null)
-            first = obj.toString();
-        else
-            last = obj.toString();
-        count++;
-        end = System.nanoTime();
+        if (count == 0)
+            first = obj;
+        last = obj;
+        advance();
+    }
+
+    /**
+     * Increments the element counter updating the end time once per
+     * {@code timeMask + 1} elements. Must be called after the element values
+     * are stored.
+     */
+    final void advance() {
+        if ((count++ & timeMask) == 0)
+            end = clock.nanoTime();
+    }
+
+    /**
+     * Updates the end time if it's sampled, so the last accumulated elements
+     * are taken into account
+     */
+    final void finish() {
+        if (timeMask != 0)
+            end = clock.nanoTime();
     }
 
     /**
@@ -35,6 +120,17 @@ public class SplitNode {
     public long getCount() {
         return count;
     }
+
+    /**
+     * @return the processing cost of the elements collected in this node. By
+     *         default it's the same as {@link #getCount()}, but nodes created
+     *         with the element weigher (see
+     *         {@link SplitTree#sampling(int, java.util.function.ToLongFunction)})
+     *         report the sum of element weights.
+     */
+    public long getWeight() {
+        return count;
+    }
     
     /**
      * @return the left child (or null for leaf node)
@@ -43,12 +139,28 @@ public class SplitNode {
         return left;
     }
     
+    /**
+     * @return string representation of the first element collected in this
+     *         node (or null if node is empty)
+     */
     public String getFirst() {
-        return first;
+        return count == 0 ? null : firstString();
     }
 
+    /**
+     * @return string representation of the last element collected in this
+     *         node (or null if node has less than two elements)
+     */
     public String getLast() {
-        return last;
+        return count < 2 ? null : lastString();
+    }
+
+    String firstString() {
+        return String.valueOf(first);
+    }
+
+    String lastString() {
+        return String.valueOf(last);
     }
     
     /**
@@ -62,7 +174,34 @@ public class SplitNode {
      * @return the name of the thread where this node was accumulated or combined
      */
     public String getThreadName() {
-        return threadName;
+        return thread.name;
+    }
+
+    /**
+     * @return the ID of the thread where this node was accumulated or
+     *         combined
+     */
+    public long getThreadId() {
+        return thread.id;
+    }
+
+    /**
+     * @return the pool of the {@link ForkJoinWorkerThread} where this node was
+     *         accumulated or combined (or null if it was not a fork-join worker
+     *         thread); the pool is referenced weakly, so null is also returned
+     *         once the pool is garbage collected
+     */
+    public ForkJoinPool getPool() {
+        return thread.pool();
+    }
+
+    /**
+     * @return the index of the {@link ForkJoinWorkerThread} within its pool
+     *         where this node was accumulated or combined (or -1 if it was not
+     *         a fork-join worker thread)
+     */
+    public int getWorkerIndex() {
+        return workerIndex;
     }
 
     /**
@@ -76,124 +215,137 @@ public class SplitNode {
      * @return true if this node collected no elements
      */
     public boolean isEmpty() {
-        return first == null;
+        return count == 0;
     }
 
     /**
-     * @return the result of System.nanoTime() when this node was created 
+     * @return the clock time when this node was created
      */
     public long getStartNanos() {
         return start;
     }
 
     /**
-     * @return the result of System.nanoTime() when the last operation was performed on this node 
+     * @return the clock time when the last operation was performed on this
+     *         node
      */
     public long getEndNanos() {
         return end;
     }
 
+    /**
+     * @return the current time of the clock used by this node
+     */
+    final long nanoTime() {
+        return clock.nanoTime();
+    }
+
     SplitNode combine(SplitNode that) {
-        SplitNode p = new SplitNode();
-        p.threadName = Thread.currentThread().getName();
-        p.count = this.count + that.count;
-        p.first = first == null ? that.first : first;
-        p.last = Stream.of(that.last, that.first, this.last, this.first).filter(Objects::nonNull).findFirst()
-                .orElse(null);
-        p.left = this;
-        p.right = that;
-        p.end = System.nanoTime();
+        SplitNode p = copy();
+        p.join(this, that);
         return p;
     }
 
-    private static String pad(String s, int left, int len) {
-        if (len == s.length())
-            return s;
-        char[] result = new char[len];
-        Arrays.fill(result, ' ');
-        s.getChars(0, s.length(), result, left);
-        return new String(result);
+    /**
+     * In-place version of {@link #combine(SplitNode)}: the current content of
+     * this node is moved to the new left child and this node becomes the
+     * parent of it and {@code that}.
+     */
+    void merge(SplitNode that) {
+        join(copy(), that);
     }
-    
-    private static int leftSpaces(String s) {
-        for (int i = 0; i < s.length(); i++) {
-            if (s.charAt(i) != ' ')
-                return i;
-        }
-        return s.length();
+
+    private void join(SplitNode l, SplitNode r) {
+        begin();
+        left = l;
+        right = r;
+        update();
+        end = clock.nanoTime();
     }
 
-    private static int rightSpaces(String s) {
-        for (int i = 0; i < s.length(); i++) {
-            if (s.charAt(s.length()-1-i) != ' ')
-                return i;
-        }
-        return s.length();
+    /**
+     * Turns this node into the splitting node whose children are not
+     * populated yet. The {@link #update()} must be called after children are
+     * populated.
+     * 
+     * @param l left child
+     * @param r right child
+     * @param startNanos the time when the split was started
+     */
+    void split(SplitNode l, SplitNode r, long startNanos) {
+        recordThread();
+        left = l;
+        right = r;
+        start = startNanos;
+        end = clock.nanoTime();
     }
 
-    List<String> asLines() {
-        String cur = toString();
-        if (left == null) {
-            return Collections.singletonList(cur);
-        }
-        List<String> l = left.asLines();
-        List<String> r = right.asLines();
-        int len1 = l.get(0).length();
-        int len2 = r.get(0).length();
-        
-        int mid1 = len1/2;
-        int mid2 = len2/2;
-
-        if(l.size() > r.size()) {
-            len1 -= Math.min(len2, Math.max(0, l.stream().limit(r.size()).mapToInt(SplitNode::rightSpaces).max().getAsInt() - 1));
-        } else if(l.size() < r.size()) {
-            len2 -= Math.min(len1, Math.max(0, r.stream().limit(l.size()).mapToInt(SplitNode::leftSpaces).max().getAsInt() - 1));
-        }
+    /**
+     * Recomputes the element count and values of this splitting node from its
+     * children
+     */
+    void update() {
+        count = left.count + right.count;
+        joinValues(left, right);
+    }
 
-        int totalLen = len1 + len2 + 1;
-        
-        int leftAdd = 0;
-        if (cur.length() < totalLen) {
-            cur = pad(cur, (totalLen - cur.length()) / 2, totalLen);
-        } else {
-            leftAdd = (cur.length() - totalLen) / 2;
-            totalLen = cur.length();
-        }
-        List<String> result = new ArrayList<>();
-        result.add(cur);
-
-        char[] dashes = new char[totalLen];
-        Arrays.fill(dashes, ' ');
-        Arrays.fill(dashes, mid1 + leftAdd + 1, len1 + len2 + 1 - mid2 + leftAdd, '_');
-        int mid = totalLen / 2;
-        dashes[mid] = mid1 + leftAdd == mid ? '|' : '/';
-        dashes[mid + 1] = len1 + len2 - mid2 + leftAdd == mid ? '|' : '\\';
-        result.add(new String(dashes));
-
-        Arrays.fill(dashes, ' ');
-        dashes[mid1 + leftAdd] = '|';
-        dashes[len1 + len2 + 1 - mid2 + leftAdd] = '|';
-        result.add(new String(dashes));
-
-        int maxSize = Math.max(l.size(), r.size());
-        
-        for (int i = 0; i < maxSize; i++) {
-            String lstr = l.size() > i ? r.size() > i ? l.get(i).substring(0, len1) : l.get(i) : "";
-            String rstr = r.size() > i ? l.size() > i ? r.get(i).substring(r.get(i).length() - len2) : r.get(i) : "";
-            if(lstr.isEmpty())
-                result.add(pad(rstr, leftAdd + len1 - rstr.length() + len2 + 1, totalLen));
-            else
-                result.add(pad(lstr + " " + rstr, leftAdd, totalLen));
+    /**
+     * Marks the beginning of the node processing by the current thread
+     */
+    void begin() {
+        recordThread();
+        start = end = clock.nanoTime();
+    }
+
+    /**
+     * Marks the end of the node processing
+     */
+    void complete() {
+        end = clock.nanoTime();
+    }
+
+    /**
+     * Copies the first and the last element from the children to this node
+     * 
+     * @param l left child
+     * @param r right child
+     */
+    void joinValues(SplitNode l, SplitNode r) {
+        first = (l.isEmpty() ? r : l).first;
+        last = (r.isEmpty() ? l : r).last;
+    }
+
+    SplitNode copy() {
+        try {
+            return (SplitNode) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
         }
-        return result;
+    }
+
+    /**
+     * @param format the format where {@code %f}, {@code %l}, {@code %c} and
+     *        {@code %w} are replaced with the first element, the last
+     *        element, the element count and the weight
+     * @return the formatted node description
+     */
+    String format(String format) {
+        return format.replace("%f", String.valueOf(getFirst()))
+            .replace("%l", String.valueOf(getLast()))
+            .replace("%c", String.valueOf(getCount()))
+            .replace("%w", String.valueOf(getWeight()));
+    }
+
+    List<String> asLines() {
+        return SplitTreeRenderer.render(this, SplitNode::toString);
     }
 
     @Override
     public String toString() {
-        if (first == null)
+        if (isEmpty())
             return "(empty)";
-        else if (last == null)
-            return "[" + first + "]";
-        return "[" + first + ".." + last + "]";
+        else if (count == 1)
+            return "[" + getFirst() + "]";
+        return "[" + getFirst() + ".." + getLast() + "]";
     }
 }
\ No newline at end of file
@@ -0,0 +1,303 @@
+package one.util.streamtools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The result of the {@link SplitProfiler}: the split trees of several runs
+ * aligned by the node position. The position of the node is its path from the
+ * root: empty string for the root, {@code "L"} for its left child,
+ * {@code "LR"} for the right child of the left child and so on. For SIZED
+ * sources the split shape is usually the same in every run, so the same
+ * position denotes the same part of the input.
+ */
+public class SplitProfile {
+    private final List<SplitTree> trees;
+    // positions of the representative tree in pre-order
+    private final List<Position> positions = new ArrayList<>();
+    private final List<SplitNode> representativeNodes = new ArrayList<>();
+    private final SplitTree representative;
+    private final int shapeRuns;
+    private final long[] totalNanos;
+
+    /**
+     * The durations of the nodes found at the same position in the different
+     * runs
+     */
+    public static class Position {
+        private final Position parent;
+        private final char side;
+        private final boolean leaf;
+        private int left = -1, right = -1;
+        private long[] nanos = new long[4];
+        private int size;
+        private int leafRuns;
+
+        Position(Position parent, char side, boolean leaf) {
+            this.parent = parent;
+            this.side = side;
+            this.leaf = leaf;
+        }
+
+        void add(SplitNode node) {
+            if (size == nanos.length)
+                nanos = Arrays.copyOf(nanos, size * 2);
+            nanos[size++] = node.getEndNanos() - node.getStartNanos();
+            if (node.isLeaf())
+                leafRuns++;
+        }
+
+        void sort() {
+            nanos = Arrays.copyOf(nanos, size);
+            Arrays.sort(nanos);
+        }
+
+        /**
+         * @return the path from the root to this position; built on every
+         *         call
+         */
+        public String getPath() {
+            StringBuilder sb = new StringBuilder();
+            for (Position p = this; p.parent != null; p = p.parent)
+                sb.append(p.side);
+            return sb.reverse().toString();
+        }
+
+        /**
+         * @return true if this position is a leaf in the most common shape
+         */
+        public boolean isLeaf() {
+            return leaf;
+        }
+
+        /**
+         * @return number of runs where the node existed at this position
+         */
+        public int getOccurrences() {
+            return size;
+        }
+
+        /**
+         * @return number of runs where the node at this position was a leaf
+         */
+        public int getLeafOccurrences() {
+            return leafRuns;
+        }
+
+        /**
+         * @param percentile the percentile between 0 and 100
+         * @return the node duration at given percentile (nearest rank)
+         */
+        public long getPercentileNanos(double percentile) {
+            return SplitProfile.percentile(nanos, percentile);
+        }
+
+        /**
+         * @return the median node duration
+         */
+        public long getMedianNanos() {
+            return getPercentileNanos(50);
+        }
+
+        /**
+         * @return the 90th percentile of the node duration
+         */
+        public long getP90Nanos() {
+            return getPercentileNanos(90);
+        }
+
+        /**
+         * @return the 99th percentile of the node duration
+         */
+        public long getP99Nanos() {
+            return getPercentileNanos(99);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%s: n=%d, median=%d ns, p90=%d ns, p99=%d ns",
+                parent == null ? "root" : getPath(), size, getMedianNanos(), getP90Nanos(), getP99Nanos());
+        }
+    }
+
+    SplitProfile(List<SplitTree> trees) {
+        this.trees = Collections.unmodifiableList(new ArrayList<>(trees));
+        Map<String, Integer> shapes = new HashMap<>();
+        List<String> treeShapes = new ArrayList<>();
+        int bestCount = 0;
+        for (SplitTree tree : trees) {
+            String shape = shape(tree.root());
+            treeShapes.add(shape);
+            bestCount = Math.max(bestCount, shapes.merge(shape, 1, Integer::sum));
+        }
+        SplitTree best = null;
+        for (int i = 0; best == null; i++) {
+            if (shapes.get(treeShapes.get(i)) == bestCount)
+                best = trees.get(i);
+        }
+        this.representative = best;
+        this.shapeRuns = bestCount;
+        index(best.root());
+        this.totalNanos = new long[trees.size()];
+        for (int i = 0; i < trees.size(); i++) {
+            SplitTree tree = trees.get(i);
+            totalNanos[i] = tree.totalNanos();
+            align(tree.root());
+        }
+        Arrays.sort(totalNanos);
+        positions.forEach(Position::sort);
+    }
+
+    private static String shape(SplitNode root) {
+        StringBuilder sb = new StringBuilder();
+        for (Iterator<SplitNode> it = SplitTree.preOrder(root); it.hasNext();) {
+            SplitNode node = it.next();
+            if (node.isLeaf())
+                sb.append(node.getCount()).append(';');
+            else
+                sb.append('(');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates the positions of the representative tree in pre-order, so the
+     * position of the node is its pre-order index
+     */
+    private void index(SplitNode root) {
+        Map<SplitNode, Position> parents = new IdentityHashMap<>();
+        for (Iterator<SplitNode> it = SplitTree.preOrder(root); it.hasNext();) {
+            SplitNode node = it.next();
+            Position parent = parents.remove(node);
+            char side = parent == null ? ' ' : parent.left < 0 ? 'L' : 'R';
+            Position position = new Position(parent, side, node.isLeaf());
+            if (parent != null) {
+                if (side == 'L')
+                    parent.left = positions.size();
+                else
+                    parent.right = positions.size();
+            }
+            positions.add(position);
+            representativeNodes.add(node);
+            if (!node.isLeaf()) {
+                parents.put(node.getLeft(), position);
+                parents.put(node.getRight(), position);
+            }
+        }
+    }
+
+    /**
+     * Adds the nodes of the tree to the positions of the representative tree
+     * descending both trees simultaneously, so the nodes are matched by their
+     * path from the root
+     */
+    private void align(SplitNode root) {
+        Deque<SplitNode> nodes = new ArrayDeque<>();
+        Deque<Integer> indices = new ArrayDeque<>();
+        nodes.push(root);
+        indices.push(0);
+        while (!nodes.isEmpty()) {
+            SplitNode node = nodes.pop();
+            Position position = positions.get(indices.pop());
+            position.add(node);
+            if (!node.isLeaf() && !position.leaf) {
+                nodes.push(node.getRight());
+                indices.push(position.right);
+                nodes.push(node.getLeft());
+                indices.push(position.left);
+            }
+        }
+    }
+
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0)
+            return 0;
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    /**
+     * @return the measured trees in the order of runs
+     */
+    public List<SplitTree> trees() {
+        return trees;
+    }
+
+    /**
+     * @return the first measured tree having the most common shape
+     */
+    public SplitTree representative() {
+        return representative;
+    }
+
+    /**
+     * @return the fraction of runs which produced the most common shape (the
+     *         same tree structure and the same leaf sizes): 1.0 if all runs
+     *         were split in the same way
+     */
+    public double shapeStability() {
+        return (double) shapeRuns / trees.size();
+    }
+
+    /**
+     * @return the positions of the most common shape in pre-order
+     */
+    public List<Position> positions() {
+        return Collections.unmodifiableList(positions);
+    }
+
+    /**
+     * @param path the path from the root like {@code "LRL"}
+     * @return the position or null if there's no such position in the most
+     *         common shape
+     */
+    public Position position(String path) {
+        Position position = positions.get(0);
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if ((c != 'L' && c != 'R') || position.leaf)
+                return null;
+            position = positions.get(c == 'L' ? position.left : position.right);
+        }
+        return position;
+    }
+
+    /**
+     * @param percentile the percentile between 0 and 100
+     * @return the total tree duration at given percentile (nearest rank)
+     */
+    public long totalNanos(double percentile) {
+        return percentile(totalNanos, percentile);
+    }
+
+    /**
+     * @return the most common tree shape where every node is labeled with its
+     *         median duration
+     */
+    public List<String> asLines() {
+        Map<SplitNode, Position> byNode = new IdentityHashMap<>();
+        for (int i = 0; i < positions.size(); i++)
+            byNode.put(representativeNodes.get(i), positions.get(i));
+        return SplitTreeRenderer.render(representative.root(), node -> node + " "
+            + byNode.get(node).getMedianNanos() / 1000 + "us");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ENGLISH, "Runs: %d, shape stability: %.2f, total: median=%d ns, p90=%d ns, p99=%d ns%n",
+            trees.size(), shapeStability(), totalNanos(50), totalNanos(90), totalNanos(99)));
+        for (String line : asLines())
+            sb.append(line).append(System.lineSeparator());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,90 @@
+package one.util.streamtools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.BaseStream;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Runs the same parallel stream many times and merges the resulting split
+ * trees into the {@link SplitProfile}. Warmup runs are performed first and
+ * discarded, so the JIT compilation and the class loading do not distort the
+ * node timings.
+ * 
+ * <pre>{@code
+ * SplitProfile profile = new SplitProfiler().warmup(10).iterations(50)
+ *         .profile(() -> IntStream.range(0, 1_000_000).map(x -> x * 2));
+ * System.out.println(profile);
+ * }</pre>
+ */
+public class SplitProfiler {
+    private int warmup = 5;
+    private int iterations = 20;
+
+    /**
+     * @param warmup number of runs to perform and discard before the
+     *        measurement
+     * @return this profiler
+     */
+    public SplitProfiler warmup(int warmup) {
+        if (warmup < 0)
+            throw new IllegalArgumentException("warmup must be non-negative: " + warmup);
+        this.warmup = warmup;
+        return this;
+    }
+
+    /**
+     * @param iterations number of measured runs
+     * @return this profiler
+     */
+    public SplitProfiler iterations(int iterations) {
+        if (iterations < 1)
+            throw new IllegalArgumentException("iterations must be positive: " + iterations);
+        this.iterations = iterations;
+        return this;
+    }
+
+    /**
+     * Profiles the stream. The supplier is called once per run and must
+     * return a fresh stream every time.
+     * 
+     * @param streamSupplier the supplier of the stream to profile (object,
+     *        int, long or double stream)
+     * @return the merged profile
+     */
+    public SplitProfile profile(Supplier<? extends BaseStream<?, ?>> streamSupplier) {
+        return profileTrees(() -> inspect(streamSupplier.get()));
+    }
+
+    /**
+     * Profiles the trees created by the supplied inspection. Useful to profile
+     * the trees created in other ways, like {@link SplitTree#collector()} or
+     * {@link SplitTree#probe(Stream, java.util.function.Consumer)}.
+     * 
+     * @param inspection the supplier which runs the stream and returns its
+     *        split tree
+     * @return the merged profile
+     */
+    public SplitProfile profileTrees(Supplier<SplitTree> inspection) {
+        for (int i = 0; i < warmup; i++)
+            inspection.get();
+        List<SplitTree> trees = new ArrayList<>(iterations);
+        for (int i = 0; i < iterations; i++)
+            trees.add(inspection.get());
+        return new SplitProfile(trees);
+    }
+
+    private static SplitTree inspect(BaseStream<?, ?> stream) {
+        if (stream instanceof IntStream)
+            return SplitTree.inspect((IntStream) stream);
+        if (stream instanceof LongStream)
+            return SplitTree.inspect((LongStream) stream);
+        if (stream instanceof DoubleStream)
+            return SplitTree.inspect((DoubleStream) stream);
+        return SplitTree.inspect((Stream<?>) stream);
+    }
+}
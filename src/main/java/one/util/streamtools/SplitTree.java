@@ -1,12 +1,30 @@
 package one.util.streamtools;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collector;
+import java.util.stream.Collector.Characteristics;
 import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Representation of Stream splitting tree
@@ -15,32 +33,52 @@ import java.util.stream.Stream;
  */
 public class SplitTree {
     private final SplitNode root;
+    private volatile List<String> lines;
+    private final Map<Integer, List<String>> windows = new ConcurrentHashMap<>();
+    private final Map<SplitNode, SplitTree> subtrees = Collections.synchronizedMap(new IdentityHashMap<>());
     
-    private static class NodeBox {
-        SplitNode node = new SplitNode();
-        
-        void accept(Object obj) {
-            node.accept(obj);
-        }
-        
-        void combine(NodeBox other) {
-            node = node.combine(other.node);
-        }
-        
-        SplitTree tree() {
-            return new SplitTree(node);
-        }
-    }
-
-    SplitTree(SplitNode root) {
+    /**
+     * Creates a tree from the root node collected manually (for example, with
+     * {@link IntSplitNode} container)
+     * 
+     * @param root the root node
+     */
+    public SplitTree(SplitNode root) {
         this.root = root;
+        ThreadIdentity stale = ThreadIdentity.refresh();
+        if (stale != null) {
+            ThreadIdentity fresh = ThreadIdentity.of(Thread.currentThread());
+            for (Iterator<SplitNode> it = preOrder(root); it.hasNext();)
+                it.next().replaceThread(stale, fresh);
+        }
     }
     
-    private static <T> Stream<T> flatTraverse(Stream<T> src, Function<T, Stream<T>> streamProvider) {
-        return src.flatMap(t -> {
-            Stream<T> result = streamProvider.apply(t);
-            return result == null ? Stream.of(t) : Stream.concat(Stream.of(t), flatTraverse(result, streamProvider));
-        });
+    /**
+     * @param root the root node
+     * @return an iterator which visits the subtree nodes in pre-order (node,
+     *         then left subtree, then right subtree) without recursion
+     */
+    static Iterator<SplitNode> preOrder(SplitNode root) {
+        Deque<SplitNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        return new Iterator<SplitNode>() {
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public SplitNode next() {
+                SplitNode node = stack.poll();
+                if (node == null)
+                    throw new NoSuchElementException();
+                if (!node.isLeaf()) {
+                    stack.push(node.getRight());
+                    stack.push(node.getLeft());
+                }
+                return node;
+            }
+        };
     }
     
     public SplitNode root() {
@@ -48,45 +86,405 @@ public class SplitTree {
     }
 
     public long totalNanos() {
-        long min = nodes().mapToLong(SplitNode::getStartNanos).min().getAsLong();
-        long max = nodes().mapToLong(SplitNode::getEndNanos).max().getAsLong();
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (Iterator<SplitNode> it = preOrder(root); it.hasNext();) {
+            SplitNode node = it.next();
+            min = Math.min(min, node.getStartNanos());
+            max = Math.max(max, node.getEndNanos());
+        }
         return max-min;
     }
 
+    /**
+     * @return the stream of all the tree nodes in pre-order
+     */
     public Stream<SplitNode> nodes() {
-        return flatTraverse(Stream.of(root), node -> node.isLeaf() ? null : Stream.of(node.getLeft(), node.getRight())); 
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(preOrder(root), Spliterator.ORDERED
+            | Spliterator.DISTINCT | Spliterator.NONNULL), false);
     }
 
     public Stream<SplitNode> leafs() {
         return nodes().filter(SplitNode::isLeaf); 
     }
     
+    /**
+     * @return the split balance and parallel efficiency report for this tree
+     */
+    public SplitTreeAnalysis analyze() {
+        return new SplitTreeAnalysis(this);
+    }
+
+    /**
+     * Compares two split trees
+     * 
+     * @param before the first tree
+     * @param after the second tree
+     * @return the structural difference between the trees
+     */
+    public static SplitTreeDiff diff(SplitTree before, SplitTree after) {
+        return new SplitTreeDiff(before, after);
+    }
+
+    /**
+     * Returns the ASCII rendering of this tree. The rendering is computed once
+     * and cached, so the tree must not be modified afterwards.
+     * 
+     * @return an unmodifiable list of lines
+     */
     public List<String> asLines() {
-        return root.asLines();
+        List<String> result = lines;
+        if (result == null) {
+            result = lines = Collections.unmodifiableList(root.asLines());
+        }
+        return result;
+    }
+
+    /**
+     * Renders only the top levels of this tree. The splitting nodes at the
+     * given depth are drawn as leafs followed by their element count, like
+     * {@code [1..100] (100 elements below)}. The hidden subtrees are not
+     * visited, so the time is proportional to the rendered part only. The
+     * rendering is cached per depth, so the tree must not be modified
+     * afterwards.
+     * 
+     * @param maxDepth the maximal depth of the rendered nodes (0 renders the
+     *        root only)
+     * @return an unmodifiable list of lines
+     */
+    public List<String> asLines(int maxDepth) {
+        if (maxDepth < 0)
+            throw new IllegalArgumentException("maxDepth must be non-negative: " + maxDepth);
+        return windows.computeIfAbsent(maxDepth, depth -> Collections.unmodifiableList(SplitTreeRenderer.render(
+            root, SplitNode::toString, depth)));
+    }
+
+    /**
+     * Returns the subtree located at the given path from the root. The same
+     * instance is returned for the same path, so the renderings of the
+     * subtree are computed only once.
+     * 
+     * @param path the sequence of {@code L} (left child) and {@code R} (right
+     *        child) characters; the empty path denotes the root
+     * @return the tree rooted at the given node
+     * @throws IllegalArgumentException if the path is malformed or leads
+     *         beyond a leaf
+     */
+    public SplitTree subtree(String path) {
+        SplitNode node = root;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if ((c != 'L' && c != 'R') || node.isLeaf())
+                throw new IllegalArgumentException("Invalid path: " + path);
+            node = c == 'L' ? node.getLeft() : node.getRight();
+        }
+        return node == root ? this : subtrees.computeIfAbsent(node, SplitTree::new);
     }
 
     @Override
     public String toString() {
-        return String.join("\n", root.asLines());
+        return String.join("\n", asLines());
     }
 
     public static Collector<Object, ?, SplitTree> collector() {
         return Collector.of(SplitNode::new, SplitNode::accept, SplitNode::combine, SplitTree::new);
     }
+
+    /**
+     * Returns a low-overhead collector which reads the system timer only once
+     * per {@code timeSampling} accumulated elements (and when the nodes are
+     * combined), so the recorded leaf end time may precede the actual end of
+     * the accumulation by up to {@code timeSampling - 1} elements. The leafs
+     * are not refreshed on combine, as the combine may happen long after
+     * their accumulation is over (when the sibling part is done); only the
+     * end time of the root is refreshed by the finisher.
+     * 
+     * @param timeSampling how often (in elements) the leaf end time is updated;
+     *        rounded up to the power of two
+     * @return the collector which builds the split tree
+     */
+    public static Collector<Object, ?, SplitTree> collector(int timeSampling) {
+        return Collector.of(() -> new SplitNode(timeSampling), SplitNode::accept, SplitNode::combine,
+            SplitTree::finish);
+    }
+    
+    /**
+     * Returns a collector which builds the split tree of
+     * {@link SampledSplitNode}s keeping the bounded uniform sample of elements
+     * in every node
+     * 
+     * @param sampleSize maximal number of elements to keep per node
+     * @return the collector which builds the split tree
+     */
+    public static Collector<Object, ?, SplitTree> sampling(int sampleSize) {
+        return sampling(sampleSize, null);
+    }
+
+    /**
+     * Returns a collector which builds the split tree of
+     * {@link SampledSplitNode}s keeping the bounded uniform sample of elements
+     * and the total element weight in every node. The weight is reported by
+     * {@link SplitNode#getWeight()} and displayed by formatters via
+     * {@code %w}.
+     * 
+     * @param <T> the type of the input elements
+     * @param sampleSize maximal number of elements to keep per node
+     * @param weigher the function which returns the processing cost of the
+     *        element (for example, {@link SampledSplitNode#elapsedWeigher()});
+     *        null to use the element count as the weight
+     * @return the collector which builds the split tree
+     */
+    public static <T> Collector<T, ?, SplitTree> sampling(int sampleSize, ToLongFunction<? super T> weigher) {
+        if (sampleSize < 0)
+            throw new IllegalArgumentException("sampleSize must be non-negative: " + sampleSize);
+        return Collector.<T, SplitNode, SplitTree> of(() -> new SampledSplitNode(sampleSize, weigher),
+            SplitNode::accept, SplitNode::combine, SplitTree::new);
+    }
+
+    /**
+     * Returns a collector which collects the elements with the downstream
+     * collector and records the split tree along with the time spent in the
+     * downstream collector functions. The {@link Characteristics#CONCURRENT
+     * CONCURRENT} characteristic of the downstream collector is dropped, as
+     * the partial results must be combined to be observed.
+     * 
+     * @param <T> the type of the input elements
+     * @param <A> the downstream accumulation type
+     * @param <R> the downstream result type
+     * @param downstream the collector to profile
+     * @return the collector producing the downstream result along with the
+     *         tree of {@link ProfiledSplitNode}s
+     */
+    public static <T, A, R> Collector<T, ?, ProfiledResult<R>> profiling(Collector<T, A, R> downstream) {
+        Supplier<A> supplier = downstream.supplier();
+        BiConsumer<A, ? super T> accumulator = downstream.accumulator();
+        BinaryOperator<A> combiner = downstream.combiner();
+        Function<A, R> finisher = downstream.finisher();
+        Characteristics[] characteristics = downstream.characteristics().contains(Characteristics.UNORDERED)
+                ? new Characteristics[] { Characteristics.UNORDERED } : new Characteristics[0];
+        return Collector.of(() -> ProfiledSplitNode.create(supplier), (ProfiledSplitNode node, T t) -> node
+                .accept(t, accumulator), (a, b) -> a.combine(b, combiner), root -> {
+            R result = root.finish(finisher);
+            return new ProfiledResult<>(result, new SplitTree(root));
+        }, characteristics);
+    }
+
+    /**
+     * Returns a collector which collects the elements with the concurrent
+     * downstream collector recording how many elements every thread has
+     * accumulated into the shared container and how much time it took. Note
+     * that the stream is collected concurrently only if it's unordered or the
+     * downstream collector is {@link Characteristics#UNORDERED UNORDERED}.
+     * 
+     * @param <T> the type of the input elements
+     * @param <A> the downstream accumulation type
+     * @param <R> the downstream result type
+     * @param downstream the {@link Characteristics#CONCURRENT CONCURRENT}
+     *        collector to profile
+     * @return the collector producing the downstream result along with the
+     *         per-thread statistics
+     * @throws IllegalArgumentException if the downstream collector is not
+     *         concurrent
+     */
+    public static <T, A, R> Collector<T, ?, ConcurrentProfile<R>> profilingConcurrent(
+            Collector<T, A, R> downstream) {
+        if (!downstream.characteristics().contains(Characteristics.CONCURRENT))
+            throw new IllegalArgumentException("Collector is not concurrent: " + downstream);
+        Supplier<A> supplier = downstream.supplier();
+        BiConsumer<A, ? super T> accumulator = downstream.accumulator();
+        BinaryOperator<A> combiner = downstream.combiner();
+        Function<A, R> finisher = downstream.finisher();
+        Characteristics[] characteristics = downstream.characteristics().stream().filter(
+            c -> c != Characteristics.IDENTITY_FINISH).toArray(Characteristics[]::new);
+        return Collector.of(() -> new ConcurrentProfile.Recording<>(supplier.get()), (
+                ConcurrentProfile.Recording<A> recording, T t) -> {
+            ConcurrentProfile.ThreadProfile profile = recording.profile();
+            long start = System.nanoTime();
+            accumulator.accept(recording.container, t);
+            profile.record(start, System.nanoTime());
+        }, (a, b) -> a.combine(b, combiner.apply(a.container, b.container)), recording -> {
+            R result = finisher.apply(recording.container);
+            return new ConcurrentProfile<>(result, recording.startNanos, System.nanoTime(), recording.threads
+                    .values());
+        }, characteristics);
+    }
+
+    /**
+     * Returns a collector which reads the timestamps from the supplied clock
+     * 
+     * @param clock the clock to use (for example, {@link SplitClock#fake(long)}
+     *        for reproducible timings in tests)
+     * @return the collector which builds the split tree
+     */
+    public static Collector<Object, ?, SplitTree> collector(SplitClock clock) {
+        return Collector.of(() -> new SplitNode(clock), SplitNode::accept, SplitNode::combine, SplitTree::new);
+    }
+
+    /**
+     * Returns a collector which reads the timestamps from the supplied clock
+     * only once per {@code timeSampling} accumulated elements (and when the
+     * nodes are combined). The leaf end times are precise up to
+     * {@code timeSampling - 1} elements as described in
+     * {@link #collector(int)}.
+     * 
+     * @param clock the clock to use
+     * @param timeSampling how often (in elements) the leaf end time is updated;
+     *        rounded up to the power of two
+     * @return the collector which builds the split tree
+     */
+    public static Collector<Object, ?, SplitTree> collector(SplitClock clock, int timeSampling) {
+        return Collector.of(() -> new SplitNode(clock, timeSampling), SplitNode::accept, SplitNode::combine,
+            SplitTree::finish);
+    }
+
+    private static SplitTree finish(SplitNode root) {
+        root.finish();
+        return new SplitTree(root);
+    }
     
+    /**
+     * Returns a stream consisting of the same elements as the supplied stream
+     * which records how the source is split while the terminal operation is
+     * executed. Unlike {@link #inspect(Stream)} this is not a terminal
+     * operation, so it can be placed into the middle of the real pipeline.
+     * 
+     * <p>
+     * The recorded tree is passed to the consumer once all the parts of the
+     * source are traversed. If the terminal operation is short-circuiting,
+     * some parts might be left untraversed; in this case the tree is passed
+     * (possibly incomplete) when the resulting stream is closed.
+     * 
+     * @param <T> type of the stream elements
+     * @param stream the stream to probe
+     * @param consumer the consumer which receives the recorded tree
+     * @return the new stream
+     */
+    public static <T> Stream<T> probe(Stream<T> stream, Consumer<? super SplitTree> consumer) {
+        RecordingSpliterator<T> spliterator = new RecordingSpliterator<>(stream.spliterator(), consumer);
+        return StreamSupport.stream(spliterator, stream.isParallel()).onClose(stream::close).onClose(
+            spliterator::report);
+    }
+
     public static SplitTree inspect(Stream<?> stream) {
         return stream.parallel().collect(collector());
     }
     
     public static SplitTree inspect(IntStream stream) {
-        return stream.parallel().collect(NodeBox::new, NodeBox::accept, NodeBox::combine).tree();
+        return new SplitTree(stream.parallel().collect(IntSplitNode::new, IntSplitNode::accept, IntSplitNode::merge));
     }
     
     public static SplitTree inspect(LongStream stream) {
-        return stream.parallel().collect(NodeBox::new, NodeBox::accept, NodeBox::combine).tree();
+        return new SplitTree(stream.parallel().collect(LongSplitNode::new, LongSplitNode::accept, LongSplitNode::merge));
     }
     
     public static SplitTree inspect(DoubleStream stream) {
-        return stream.parallel().collect(NodeBox::new, NodeBox::accept, NodeBox::combine).tree();
+        return new SplitTree(stream.parallel().collect(DoubleSplitNode::new, DoubleSplitNode::accept,
+            DoubleSplitNode::merge));
+    }
+
+    /**
+     * Inspects the stream reading the system timer only once per
+     * {@code timeSampling} elements of every leaf; the leaf end times have
+     * the precision described in {@link #collector(int)}
+     * 
+     * @param stream the stream to inspect
+     * @param timeSampling how often (in elements) the leaf end time is updated;
+     *        rounded up to the power of two
+     * @return the split tree
+     */
+    public static SplitTree inspect(Stream<?> stream, int timeSampling) {
+        return stream.parallel().collect(collector(timeSampling));
+    }
+
+    /**
+     * Inspects the stream reading the system timer only once per
+     * {@code timeSampling} elements of every leaf; the leaf end times have
+     * the precision described in {@link #collector(int)}
+     * 
+     * @param stream the stream to inspect
+     * @param timeSampling how often (in elements) the leaf end time is updated;
+     *        rounded up to the power of two
+     * @return the split tree of {@link IntSplitNode}s
+     */
+    public static SplitTree inspect(IntStream stream, int timeSampling) {
+        return finish(stream.parallel().collect(() -> new IntSplitNode(timeSampling), IntSplitNode::accept,
+            IntSplitNode::merge));
+    }
+
+    /**
+     * Inspects the stream reading the system timer only once per
+     * {@code timeSampling} elements of every leaf; the leaf end times have
+     * the precision described in {@link #collector(int)}
+     * 
+     * @param stream the stream to inspect
+     * @param timeSampling how often (in elements) the leaf end time is updated;
+     *        rounded up to the power of two
+     * @return the split tree of {@link LongSplitNode}s
+     */
+    public static SplitTree inspect(LongStream stream, int timeSampling) {
+        return finish(stream.parallel().collect(() -> new LongSplitNode(timeSampling), LongSplitNode::accept,
+            LongSplitNode::merge));
+    }
+
+    /**
+     * Inspects the stream reading the system timer only once per
+     * {@code timeSampling} elements of every leaf; the leaf end times have
+     * the precision described in {@link #collector(int)}
+     * 
+     * @param stream the stream to inspect
+     * @param timeSampling how often (in elements) the leaf end time is updated;
+     *        rounded up to the power of two
+     * @return the split tree of {@link DoubleSplitNode}s
+     */
+    public static SplitTree inspect(DoubleStream stream, int timeSampling) {
+        return finish(stream.parallel().collect(() -> new DoubleSplitNode(timeSampling), DoubleSplitNode::accept,
+            DoubleSplitNode::merge));
+    }
+
+    /**
+     * Inspects the stream running it in the supplied pool instead of the
+     * common pool
+     * 
+     * @param stream the stream to inspect
+     * @param pool the pool to run the stream in
+     * @return the split tree
+     */
+    public static SplitTree inspect(Stream<?> stream, ForkJoinPool pool) {
+        return pool.submit(() -> inspect(stream)).join();
+    }
+
+    /**
+     * Inspects the stream running it in the supplied pool instead of the
+     * common pool
+     * 
+     * @param stream the stream to inspect
+     * @param pool the pool to run the stream in
+     * @return the split tree
+     */
+    public static SplitTree inspect(IntStream stream, ForkJoinPool pool) {
+        return pool.submit(() -> inspect(stream)).join();
+    }
+
+    /**
+     * Inspects the stream running it in the supplied pool instead of the
+     * common pool
+     * 
+     * @param stream the stream to inspect
+     * @param pool the pool to run the stream in
+     * @return the split tree
+     */
+    public static SplitTree inspect(LongStream stream, ForkJoinPool pool) {
+        return pool.submit(() -> inspect(stream)).join();
+    }
+
+    /**
+     * Inspects the stream running it in the supplied pool instead of the
+     * common pool
+     * 
+     * @param stream the stream to inspect
+     * @param pool the pool to run the stream in
+     * @return the split tree
+     */
+    public static SplitTree inspect(DoubleStream stream, ForkJoinPool pool) {
+        return pool.submit(() -> inspect(stream)).join();
     }
 }
@@ -0,0 +1,261 @@
+package one.util.streamtools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Split balance and parallel efficiency report computed from the
+ * {@link SplitTree}. Can be used to assert the split quality in tests:
+ * 
+ * <pre>{@code
+ * SplitTreeAnalysis analysis = SplitTree.inspect(myStream).analyze();
+ * assertTrue(analysis.imbalance() < 1.5);
+ * }</pre>
+ */
+public class SplitTreeAnalysis {
+    private final SplitTree tree;
+    private final LongSummaryStatistics leafSizes = new LongSummaryStatistics();
+    private final LongSummaryStatistics leafWeights = new LongSummaryStatistics();
+    private final long[] depthHistogram;
+    private final List<SplitNode> criticalPath;
+    private final Map<String, Long> busyNanos = new TreeMap<>();
+    private final long totalNanos;
+    private final long leafNanos;
+    private final long combineNanos;
+    private final double leafSizeVariation;
+
+    /**
+     * @param tree the tree to analyze
+     */
+    public SplitTreeAnalysis(SplitTree tree) {
+        this.tree = tree;
+        List<SplitNode> nodes = new ArrayList<>();
+        Map<SplitNode, Integer> index = new IdentityHashMap<>();
+        int[] depths = new int[16];
+        int maxDepth = 0;
+        long minStart = Long.MAX_VALUE, maxEnd = Long.MIN_VALUE;
+        long leafNanos = 0, combineNanos = 0;
+        Deque<SplitNode> stack = new ArrayDeque<>();
+        Deque<Integer> depthStack = new ArrayDeque<>();
+        stack.push(tree.root());
+        depthStack.push(0);
+        while (!stack.isEmpty()) {
+            SplitNode node = stack.pop();
+            int depth = depthStack.pop();
+            if (nodes.size() == depths.length)
+                depths = Arrays.copyOf(depths, depths.length * 2);
+            depths[nodes.size()] = depth;
+            index.put(node, nodes.size());
+            nodes.add(node);
+            long duration = node.getEndNanos() - node.getStartNanos();
+            minStart = Math.min(minStart, node.getStartNanos());
+            maxEnd = Math.max(maxEnd, node.getEndNanos());
+            busyNanos.merge(node.getThreadName(), duration, Long::sum);
+            if (node.isLeaf()) {
+                leafSizes.accept(node.getCount());
+                leafWeights.accept(node.getWeight());
+                leafNanos += duration;
+                maxDepth = Math.max(maxDepth, depth);
+            } else {
+                combineNanos += duration;
+                stack.push(node.getRight());
+                depthStack.push(depth + 1);
+                stack.push(node.getLeft());
+                depthStack.push(depth + 1);
+            }
+        }
+        this.totalNanos = maxEnd - minStart;
+        this.leafNanos = leafNanos;
+        this.combineNanos = combineNanos;
+        this.depthHistogram = new long[maxDepth + 1];
+        long[] subtreeEnd = new long[nodes.size()];
+        double squares = 0;
+        double mean = leafSizes.getAverage();
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            SplitNode node = nodes.get(i);
+            subtreeEnd[i] = node.getEndNanos();
+            if (node.isLeaf()) {
+                depthHistogram[depths[i]]++;
+                squares += (node.getCount() - mean) * (node.getCount() - mean);
+            } else {
+                subtreeEnd[i] = Math.max(subtreeEnd[i], Math.max(subtreeEnd[index.get(node.getLeft())],
+                    subtreeEnd[index.get(node.getRight())]));
+            }
+        }
+        this.leafSizeVariation = mean == 0 ? 0 : Math.sqrt(squares / leafSizes.getCount()) / mean;
+        List<SplitNode> path = new ArrayList<>();
+        SplitNode node = tree.root();
+        while (true) {
+            path.add(node);
+            if (node.isLeaf())
+                break;
+            node = subtreeEnd[index.get(node.getLeft())] > subtreeEnd[index.get(node.getRight())] ? node.getLeft()
+                    : node.getRight();
+        }
+        this.criticalPath = Collections.unmodifiableList(path);
+    }
+
+    /**
+     * @return the analyzed tree
+     */
+    public SplitTree tree() {
+        return tree;
+    }
+
+    /**
+     * @return statistics of the number of elements collected in the leaf
+     *         nodes
+     */
+    public LongSummaryStatistics leafSizes() {
+        return leafSizes;
+    }
+
+    /**
+     * @return the ratio of the biggest leaf size to the average leaf size: 1.0
+     *         for perfectly balanced tree, bigger for unbalanced ones
+     */
+    public double imbalance() {
+        double mean = leafSizes.getAverage();
+        return mean == 0 ? 1.0 : leafSizes.getMax() / mean;
+    }
+
+    /**
+     * @return statistics of the leaf weights (see {@link SplitNode#getWeight()})
+     */
+    public LongSummaryStatistics leafWeights() {
+        return leafWeights;
+    }
+
+    /**
+     * @return the ratio of the biggest leaf weight to the average leaf
+     *         weight: unlike {@link #imbalance()} shows the skew in the
+     *         processing cost rather than in the element count
+     */
+    public double weightImbalance() {
+        double mean = leafWeights.getAverage();
+        return mean == 0 ? 1.0 : leafWeights.getMax() / mean;
+    }
+
+    /**
+     * @return the coefficient of variation of the leaf sizes (standard
+     *         deviation divided by the mean): 0.0 if all leafs have the same
+     *         size
+     */
+    public double leafSizeVariation() {
+        return leafSizeVariation;
+    }
+
+    /**
+     * @return an array where the element at index {@code i} is the number of
+     *         leafs at depth {@code i} (root has depth 0)
+     */
+    public long[] depthHistogram() {
+        return depthHistogram.clone();
+    }
+
+    /**
+     * @return the depth of the deepest leaf
+     */
+    public int maxDepth() {
+        return depthHistogram.length - 1;
+    }
+
+    /**
+     * @return the path from root to the leaf which at every splitting node
+     *         follows the subtree which completed later
+     */
+    public List<SplitNode> criticalPath() {
+        return criticalPath;
+    }
+
+    /**
+     * @return total duration of the nodes on the critical path
+     */
+    public long criticalPathNanos() {
+        return criticalPath.stream().mapToLong(node -> node.getEndNanos() - node.getStartNanos()).sum();
+    }
+
+    /**
+     * @return the time between the start of the earliest node and the end of
+     *         the latest node
+     */
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the sum of leaf node durations
+     */
+    public long leafNanos() {
+        return leafNanos;
+    }
+
+    /**
+     * @return the sum of splitting node durations
+     */
+    public long combineNanos() {
+        return combineNanos;
+    }
+
+    /**
+     * @return map from thread name to the total duration of the nodes
+     *         processed by that thread
+     */
+    public Map<String, Long> busyNanos() {
+        return Collections.unmodifiableMap(busyNanos);
+    }
+
+    /**
+     * @return map from thread name to the time within {@link #totalNanos()}
+     *         when that thread was not processing any node
+     */
+    public Map<String, Long> idleNanos() {
+        Map<String, Long> result = new TreeMap<>();
+        busyNanos.forEach((thread, busy) -> result.put(thread, Math.max(0, totalNanos - busy)));
+        return result;
+    }
+
+    /**
+     * @return the estimated parallel speedup: the sum of leaf durations
+     *         divided by the total duration
+     */
+    public double speedup() {
+        return totalNanos == 0 ? 1.0 : (double) leafNanos / totalNanos;
+    }
+
+    /**
+     * @return the estimated parallel efficiency: the speedup divided by the
+     *         number of threads participated
+     */
+    public double efficiency() {
+        return speedup() / busyNanos.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ENGLISH, "Leafs: %d, sizes: %d..%d (avg %.1f), imbalance: %.2f, variation: %.2f%n",
+            leafSizes.getCount(), leafSizes.getMin(), leafSizes.getMax(), leafSizes.getAverage(), imbalance(),
+            leafSizeVariation));
+        sb.append(String.format(Locale.ENGLISH, "Leaf weights: %d..%d (avg %.1f), imbalance: %.2f%n", leafWeights
+                .getMin(), leafWeights.getMax(), leafWeights.getAverage(), weightImbalance()));
+        sb.append("Leafs per depth: ").append(Arrays.toString(depthHistogram)).append(System.lineSeparator());
+        sb.append(String.format(Locale.ENGLISH,
+            "Total: %d ns, leafs: %d ns, combine: %d ns, critical path: %d ns (%d nodes)%n", totalNanos, leafNanos,
+            combineNanos, criticalPathNanos(), criticalPath.size()));
+        sb.append(String.format(Locale.ENGLISH, "Speedup: %.2f, efficiency: %.2f%n", speedup(), efficiency()));
+        Map<String, Long> idle = idleNanos();
+        busyNanos.forEach((thread, busy) -> sb.append(String.format(Locale.ENGLISH, "  %s: busy %d ns, idle %d ns%n",
+            thread, busy, idle.get(thread))));
+        return sb.toString();
+    }
+}
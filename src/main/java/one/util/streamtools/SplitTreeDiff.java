@@ -0,0 +1,374 @@
+package one.util.streamtools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Structural difference between two split trees (for example, two runs of
+ * the same pipeline or two spliterator implementations). Nodes are matched
+ * by their position (the path from the root like {@code "LR"}); matched nodes
+ * are compared by the element count and the first/last elements. The nodes
+ * which exist at some position in one tree only are additionally matched by
+ * the count and the first/last elements against the unmatched nodes of the
+ * other tree, so an extra split near the root doesn't turn the whole subtree
+ * into added and removed nodes.
+ * 
+ * <pre>{@code
+ * SplitTreeDiff diff = SplitTree.diff(before, after);
+ * System.out.println(diff);
+ * }</pre>
+ */
+public class SplitTreeDiff {
+    /**
+     * The kind of the difference at the single position
+     */
+    public enum Change {
+        /**
+         * Both trees have the node with the same count and range
+         */
+        SAME,
+        /**
+         * Both trees have the node, but the count or the range differ
+         */
+        RESIZED,
+        /**
+         * The node is a leaf in the first tree and split in the second tree
+         */
+        SPLIT_ADDED,
+        /**
+         * The node is split in the first tree and a leaf in the second tree
+         */
+        SPLIT_REMOVED,
+        /**
+         * The node exists in the second tree only
+         */
+        ADDED,
+        /**
+         * The node exists in the first tree only
+         */
+        REMOVED,
+        /**
+         * The node exists at this position in one tree only, but the other
+         * tree has the node with the same count and range at another position
+         */
+        MOVED
+    }
+
+    /**
+     * The comparison result at the single position
+     */
+    public static class Entry {
+        private final Entry parent;
+        private final char side;
+        private final SplitNode before, after;
+        private final Change change;
+        private Entry movedTo;
+
+        Entry(Entry parent, char side, SplitNode before, SplitNode after, Change change) {
+            this.parent = parent;
+            this.side = side;
+            this.before = before;
+            this.after = after;
+            this.change = change;
+        }
+
+        /**
+         * @return the path from the root to this position
+         */
+        public String getPath() {
+            StringBuilder sb = new StringBuilder();
+            for (Entry entry = this; entry.parent != null; entry = entry.parent)
+                sb.append(entry.side);
+            return sb.reverse().toString();
+        }
+
+        /**
+         * @return the node of the first tree (or null if it has no node at
+         *         this position); for {@link Change#MOVED} this may be the
+         *         matching node at the other position
+         */
+        public SplitNode getBefore() {
+            return before != null || movedTo == null ? before : movedTo.before;
+        }
+
+        /**
+         * @return the node of the second tree (or null if it has no node at
+         *         this position); for {@link Change#MOVED} this may be the
+         *         matching node at the other position
+         */
+        public SplitNode getAfter() {
+            return after != null || movedTo == null ? after : movedTo.after;
+        }
+
+        /**
+         * @return the kind of the difference
+         */
+        public Change getChange() {
+            return movedTo == null ? change : Change.MOVED;
+        }
+
+        /**
+         * @return for {@link Change#MOVED}, the position of the matching node
+         *         in the other tree; null otherwise
+         */
+        public Entry getMovedTo() {
+            return movedTo;
+        }
+
+        /**
+         * @return the change of the node duration in nanoseconds (0 if the
+         *         node exists in one tree only)
+         */
+        public long getDurationDeltaNanos() {
+            SplitNode before = getBefore(), after = getAfter();
+            if (before == null || after == null)
+                return 0;
+            return (after.getEndNanos() - after.getStartNanos()) - (before.getEndNanos() - before.getStartNanos());
+        }
+
+        String label() {
+            switch (change) {
+            case SAME:
+                return after.toString();
+            case RESIZED:
+                return before + "=>" + after;
+            case SPLIT_ADDED:
+            case ADDED:
+                return (movedTo == null ? "+" : "~") + after;
+            default:
+                return (movedTo == null ? "-" : "~") + before;
+            }
+        }
+
+        @Override
+        public String toString() {
+            String path = getPath();
+            return String.format(Locale.ENGLISH, "%s %s: %s, duration %+d ns", path.isEmpty() ? "root" : path,
+                getChange(), label(), getDurationDeltaNanos())
+                + (movedTo == null ? "" : ", moved from/to " + movedTo.getPath());
+        }
+    }
+
+    private static final class Range {
+        private final long count;
+        private final String first, last;
+
+        Range(SplitNode node) {
+            this.count = node.getCount();
+            this.first = node.getFirst();
+            this.last = node.getLast();
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(count) * 31 + Objects.hashCode(first) * 17 + Objects.hashCode(last);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Range))
+                return false;
+            Range other = (Range) obj;
+            return count == other.count && Objects.equals(first, other.first) && Objects.equals(last, other.last);
+        }
+    }
+
+    private final SplitTree before, after;
+    private final List<Entry> entries = new ArrayList<>();
+    private final SplitNode union;
+    private final Map<SplitNode, Entry> labels = new IdentityHashMap<>();
+
+    /**
+     * @param before the first tree
+     * @param after the second tree
+     */
+    public SplitTreeDiff(SplitTree before, SplitTree after) {
+        this.before = before;
+        this.after = after;
+        // pre-order walk over both trees collecting the union tree shape
+        List<SplitNode> shapes = new ArrayList<>();
+        Deque<Entry> stack = new ArrayDeque<>();
+        stack.push(entry(null, ' ', before.root(), after.root(), null));
+        while (!stack.isEmpty()) {
+            Entry entry = stack.pop();
+            entries.add(entry);
+            SplitNode a = entry.before, b = entry.after;
+            SplitNode shape = a == null || (b != null && a.isLeaf()) ? b : a;
+            shapes.add(shape);
+            if (shape.isLeaf())
+                continue;
+            Change childChange = entry.change == Change.SPLIT_ADDED || entry.change == Change.ADDED ? Change.ADDED
+                    : entry.change == Change.SPLIT_REMOVED || entry.change == Change.REMOVED ? Change.REMOVED : null;
+            stack.push(entry(entry, 'R', child(a, false), child(b, false), childChange));
+            stack.push(entry(entry, 'L', child(a, true), child(b, true), childChange));
+        }
+        matchMoved();
+        // build the union tree bottom-up from the reversed pre-order
+        List<SplitNode> built = new ArrayList<>();
+        for (int i = shapes.size() - 1; i >= 0; i--) {
+            SplitNode node = new SplitNode();
+            if (!shapes.get(i).isLeaf()) {
+                SplitNode left = built.remove(built.size() - 1);
+                SplitNode right = built.remove(built.size() - 1);
+                node.split(left, right, 0);
+            }
+            labels.put(node, entries.get(i));
+            built.add(node);
+        }
+        this.union = built.get(0);
+    }
+
+    /**
+     * Matches the nodes existing at their position in one tree only with the
+     * nodes of the other tree having the same range which are not matched by
+     * the position.
+     */
+    private void matchMoved() {
+        Map<Range, Deque<Entry>> removed = new HashMap<>(), added = new HashMap<>();
+        for (Entry entry : entries) {
+            if (entry.change == Change.SAME || entry.before != null && entry.after != null
+                && sameRange(entry.before, entry.after))
+                continue;
+            if (entry.before != null)
+                removed.computeIfAbsent(new Range(entry.before), k -> new ArrayDeque<>()).add(entry);
+            if (entry.after != null)
+                added.computeIfAbsent(new Range(entry.after), k -> new ArrayDeque<>()).add(entry);
+        }
+        for (Entry entry : entries) {
+            if (entry.change == Change.REMOVED && entry.movedTo == null)
+                entry.movedTo = poll(added.get(new Range(entry.before)));
+            else if (entry.change == Change.ADDED && entry.movedTo == null)
+                entry.movedTo = poll(removed.get(new Range(entry.after)));
+            else
+                continue;
+            // the matching node may be single-sided as well: link it back
+            if (entry.movedTo != null && (entry.movedTo.before == null || entry.movedTo.after == null))
+                entry.movedTo.movedTo = entry;
+        }
+    }
+
+    private static Entry poll(Deque<Entry> candidates) {
+        if (candidates == null)
+            return null;
+        while (!candidates.isEmpty()) {
+            Entry candidate = candidates.poll();
+            // single-sided candidates already matched by themselves are taken
+            if (candidate.movedTo == null || candidate.change != Change.ADDED && candidate.change != Change.REMOVED)
+                return candidate;
+        }
+        return null;
+    }
+
+    private static Entry entry(Entry parent, char side, SplitNode a, SplitNode b, Change change) {
+        if (change == null) {
+            if (a.isLeaf() != b.isLeaf())
+                change = a.isLeaf() ? Change.SPLIT_ADDED : Change.SPLIT_REMOVED;
+            else
+                change = sameRange(a, b) ? Change.SAME : Change.RESIZED;
+        }
+        return new Entry(parent, side, a, b, change);
+    }
+
+    private static SplitNode child(SplitNode node, boolean left) {
+        if (node == null || node.isLeaf())
+            return null;
+        return left ? node.getLeft() : node.getRight();
+    }
+
+    private static boolean sameRange(SplitNode a, SplitNode b) {
+        return a.getCount() == b.getCount() && Objects.equals(a.getFirst(), b.getFirst())
+            && Objects.equals(a.getLast(), b.getLast());
+    }
+
+    /**
+     * @return the first tree
+     */
+    public SplitTree before() {
+        return before;
+    }
+
+    /**
+     * @return the second tree
+     */
+    public SplitTree after() {
+        return after;
+    }
+
+    /**
+     * @return all the positions of both trees in pre-order
+     */
+    public List<Entry> entries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return the positions where the trees differ
+     */
+    public List<Entry> changes() {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries)
+            if (entry.getChange() != Change.SAME)
+                result.add(entry);
+        return result;
+    }
+
+    /**
+     * @param change the kind of the difference
+     * @return the positions having the given kind of the difference
+     */
+    public List<Entry> changes(Change change) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries)
+            if (entry.getChange() == change)
+                result.add(entry);
+        return result;
+    }
+
+    /**
+     * @return true if both trees have the same shape and the same node ranges
+     */
+    public boolean isSameShape() {
+        for (Entry entry : entries)
+            if (entry.getChange() != Change.SAME)
+                return false;
+        return true;
+    }
+
+    /**
+     * Renders the union of both trees: unchanged nodes are shown as usual,
+     * resized nodes are shown as {@code before=>after}, the nodes which exist
+     * only in the second tree (including the new splits) are prefixed with
+     * {@code +}, the nodes which exist only in the first tree are prefixed
+     * with {@code -} and the nodes which exist in the other tree at another
+     * position are prefixed with {@code ~}.
+     * 
+     * @return the list of lines
+     */
+    public List<String> asLines() {
+        return SplitTreeRenderer.render(union, node -> labels.get(node).label());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Change change : Change.values()) {
+            if (change == Change.SAME)
+                continue;
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(change).append(": ").append(changes(change).size());
+        }
+        sb.append(System.lineSeparator());
+        for (String line : asLines())
+            sb.append(line).append(System.lineSeparator());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,42 @@
+package one.util.streamtools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the {@link SplitTree} in some external format. Implementations write
+ * the output while traversing the tree without building an intermediate
+ * representation.
+ * 
+ * @see XGMLFormatter
+ * @see DotFormatter
+ * @see TraceEventFormatter
+ */
+public interface SplitTreeExporter {
+    /**
+     * Writes the tree to the supplied writer. The writer is not closed.
+     * 
+     * @param tree the tree to write
+     * @param writer the writer to write to
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo(SplitTree tree, Writer writer) throws IOException;
+
+    /**
+     * Writes the tree to the supplied stream using UTF-8 encoding. The stream
+     * is not closed.
+     * 
+     * @param tree the tree to write
+     * @param os the stream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    default void writeTo(SplitTree tree, OutputStream os) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+        writeTo(tree, writer);
+        writer.flush();
+    }
+}
@@ -0,0 +1,131 @@
+package one.util.streamtools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Reads split trees written by {@link SplitTreeWriter}. The restored nodes
+ * keep the thread names, the worker indices, the timings, the element counts
+ * and weights and the string representations of the first and the last
+ * elements.
+ */
+public class SplitTreeReader {
+    private SplitTreeReader() {
+    }
+
+    /**
+     * Reads all the trees from the file mapping it into memory
+     * 
+     * @param path the file to read
+     * @return the list of trees in the order they were written
+     * @throws IOException if the file cannot be read or has the wrong format
+     */
+    public static List<SplitTree> readAll(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            List<SplitTree> result = new ArrayList<>();
+            try {
+                while (buffer.hasRemaining())
+                    result.add(read(buffer));
+            } catch (RuntimeException e) {
+                throw new IOException("Malformed split tree file: " + path, e);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Reads the single tree starting at the current buffer position. After
+     * the successful read the buffer position points to the next tree.
+     * 
+     * @param buffer the buffer to read from
+     * @return the tree
+     * @throws IllegalArgumentException if the buffer does not contain the
+     *         tree at the current position
+     */
+    public static SplitTree read(ByteBuffer buffer) {
+        if (buffer.getInt() != SplitTreeWriter.MAGIC)
+            throw new IllegalArgumentException("Not a split tree at position " + (buffer.position() - 4));
+        long prevStart = buffer.getLong();
+        List<String> strings = new ArrayList<>();
+        List<SplitNode> nodes = new ArrayList<>();
+        BitSet leafs = new BitSet();
+        int pending = 1;
+        while (pending > 0) {
+            pending--;
+            int flags = buffer.get();
+            long start = prevStart + readSigned(buffer);
+            long end = start + readSigned(buffer);
+            prevStart = start;
+            String thread = readString(buffer, strings);
+            int worker = (flags & SplitTreeWriter.HAS_WORKER) != 0 ? (int) readVarLong(buffer) : -1;
+            SplitNode node;
+            boolean leaf = (flags & SplitTreeWriter.LEAF) != 0;
+            if (leaf) {
+                long count = readVarLong(buffer);
+                String first = (flags & SplitTreeWriter.HAS_FIRST) != 0 ? readString(buffer, strings) : null;
+                String last = (flags & SplitTreeWriter.HAS_LAST) != 0 ? readString(buffer, strings) : first;
+                long weight = (flags & SplitTreeWriter.HAS_WEIGHT) != 0 ? readSigned(buffer) : count;
+                node = new LoadedSplitNode(thread, weight);
+                node.restoreValues(first, last, count);
+            } else {
+                node = new LoadedSplitNode(thread, 0);
+                pending += 2;
+            }
+            node.restore(-1, worker, start, end);
+            leafs.set(nodes.size(), leaf);
+            nodes.add(node);
+        }
+        List<SplitNode> stack = new ArrayList<>();
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            SplitNode node = nodes.get(i);
+            if (!leafs.get(i)) {
+                SplitNode left = stack.remove(stack.size() - 1);
+                SplitNode right = stack.remove(stack.size() - 1);
+                int worker = node.getWorkerIndex();
+                long start = node.getStartNanos(), end = node.getEndNanos();
+                node.split(left, right, start);
+                node.update();
+                node.restore(-1, worker, start, end);
+            }
+            stack.add(node);
+        }
+        return new SplitTree(stack.get(0));
+    }
+
+    private static String readString(ByteBuffer buffer, List<String> strings) {
+        int index = (int) readVarLong(buffer);
+        if (index > 0)
+            return strings.get(index - 1);
+        int length = (int) readVarLong(buffer);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        String s = new String(bytes, StandardCharsets.UTF_8);
+        strings.add(s);
+        return s;
+    }
+
+    private static long readSigned(ByteBuffer buffer) {
+        long value = readVarLong(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return result;
+        }
+        throw new IllegalArgumentException("Malformed varint at position " + buffer.position());
+    }
+}
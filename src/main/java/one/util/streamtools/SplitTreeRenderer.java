@@ -0,0 +1,298 @@
+package one.util.streamtools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Renders the split tree as ASCII lines. Every subtree is laid out as a
+ * rectangular block: the node label, the connector lines and the blocks of
+ * the children below. When children have different heights, the block of the
+ * taller child may extend under the shorter one as far as the blank columns
+ * of the overlapping rows allow.
+ * 
+ * <p>
+ * The layout is computed bottom-up without recursion keeping only the
+ * leftmost and the rightmost non-space column of every row of the subtree
+ * block (the block profile). The profile of the taller child is reused for
+ * the parent, so only the overlapping rows are merged. After that every
+ * output row is filled exactly once. Big trees are laid out in parallel, as
+ * the layout of disjoint subtrees is independent.
+ * 
+ * <p>
+ * The labels of big trees are computed in parallel as well, so the labeler
+ * is called from several threads at once and must be thread-safe (like the
+ * lookup in a map which is not modified during the rendering).
+ */
+final class SplitTreeRenderer {
+    /**
+     * Trees with at least this number of nodes are laid out in parallel
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 14;
+    /**
+     * Subtrees smaller than this are laid out sequentially by a single task
+     */
+    private static final int TASK_THRESHOLD = 1 << 12;
+    /**
+     * Maximal nesting of the layout tasks, so degenerate deep trees do not
+     * overflow the stack
+     */
+    private static final int MAX_TASK_DEPTH = 32;
+
+    private final SplitNode[] nodes;
+    private final String[] labels;
+    private final boolean[] leaf;
+    private final boolean parallel;
+    private int[] size, width, labelX, leftX, rightX, leftPipe, rightPipe;
+    private Profile[] profiles;
+
+    private static final class Profile {
+        // Rows are stored bottom-up, so new rows can be prepended cheaply
+        int[] lo = new int[4], hi = new int[4];
+        int height, shift;
+
+        int lo(int row) {
+            return lo[height - 1 - row] + shift;
+        }
+
+        int hi(int row) {
+            return hi[height - 1 - row] + shift;
+        }
+
+        void set(int row, int l, int h) {
+            lo[height - 1 - row] = l - shift;
+            hi[height - 1 - row] = h - shift;
+        }
+
+        void prepend(int l, int h) {
+            if (height == lo.length) {
+                lo = Arrays.copyOf(lo, height * 2);
+                hi = Arrays.copyOf(hi, height * 2);
+            }
+            lo[height] = l - shift;
+            hi[height] = h - shift;
+            height++;
+        }
+    }
+
+    private final class LayoutTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int node, depth;
+
+        LayoutTask(int node, int depth) {
+            this.node = node;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (size[node] < TASK_THRESHOLD || leaf[node] || depth >= MAX_TASK_DEPTH) {
+                layout(node, node + size[node]);
+            } else {
+                int l = node + 1;
+                invokeAll(new LayoutTask(l, depth + 1), new LayoutTask(l + size[l], depth + 1));
+                layoutNode(node);
+            }
+        }
+    }
+
+    private SplitTreeRenderer(SplitNode root, Function<? super SplitNode, String> labeler, int maxDepth,
+            boolean allowParallel) {
+        List<SplitNode> list = new ArrayList<>();
+        BitSet cut = new BitSet();
+        Deque<SplitNode> stack = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        stack.push(root);
+        depths.push(0);
+        while (!stack.isEmpty()) {
+            SplitNode node = stack.pop();
+            int depth = depths.pop();
+            list.add(node);
+            boolean hidden = !node.isLeaf() && depth >= maxDepth;
+            cut.set(list.size() - 1, hidden);
+            if (!node.isLeaf() && !hidden) {
+                stack.push(node.getRight());
+                depths.push(depth + 1);
+                stack.push(node.getLeft());
+                depths.push(depth + 1);
+            }
+        }
+        int n = list.size();
+        nodes = list.toArray(new SplitNode[n]);
+        leaf = new boolean[n];
+        labels = new String[n];
+        parallel = allowParallel && n >= PARALLEL_THRESHOLD;
+        IntStream indices = IntStream.range(0, n);
+        (parallel ? indices.parallel() : indices).forEach(i -> {
+            SplitNode node = nodes[i];
+            leaf[i] = node.isLeaf() || cut.get(i);
+            labels[i] = cut.get(i) ? labeler.apply(node) + " (" + node.getCount() + " elements below)" : labeler
+                    .apply(node);
+        });
+    }
+
+    static List<String> render(SplitNode root, Function<? super SplitNode, String> labeler) {
+        return render(root, labeler, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Renders the tree down to the given depth. The splitting nodes at the
+     * maximal depth are rendered as leafs with their element count appended
+     * to the label; the hidden subtrees are not visited.
+     */
+    static List<String> render(SplitNode root, Function<? super SplitNode, String> labeler, int maxDepth) {
+        return new SplitTreeRenderer(root, labeler, maxDepth, true).render();
+    }
+
+    /**
+     * Renders the tree in the current thread regardless of its size
+     */
+    static List<String> renderSequentially(SplitNode root, Function<? super SplitNode, String> labeler) {
+        return new SplitTreeRenderer(root, labeler, Integer.MAX_VALUE, false).render();
+    }
+
+    private static int leftSpaces(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != ' ')
+                return i;
+        }
+        return s.length();
+    }
+
+    private static int rightSpaces(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(s.length() - 1 - i) != ' ')
+                return i;
+        }
+        return s.length();
+    }
+
+    private List<String> render() {
+        int n = nodes.length;
+        size = new int[n];
+        width = new int[n];
+        labelX = new int[n];
+        leftX = new int[n];
+        rightX = new int[n];
+        leftPipe = new int[n];
+        rightPipe = new int[n];
+        profiles = new Profile[n];
+        for (int i = n - 1; i >= 0; i--) {
+            if (leaf[i]) {
+                size[i] = 1;
+            } else {
+                int l = i + 1;
+                size[i] = 1 + size[l] + size[l + size[l]];
+            }
+        }
+        if (parallel) {
+            // independent subtrees are laid out by different fork-join tasks
+            ForkJoinPool.commonPool().invoke(new LayoutTask(0, 0));
+        } else {
+            layout(0, n);
+        }
+        return draw(profiles[0].height);
+    }
+
+    /**
+     * Lays out the nodes within the given pre-order range which must contain
+     * complete subtrees
+     */
+    private void layout(int from, int to) {
+        for (int i = to - 1; i >= from; i--)
+            layoutNode(i);
+    }
+
+    private void layoutNode(int i) {
+        String label = labels[i];
+        if (leaf[i]) {
+            width[i] = label.length();
+            Profile p = new Profile();
+            p.prepend(leftSpaces(label), label.length() - 1 - rightSpaces(label));
+            profiles[i] = p;
+            return;
+        }
+        int l = i + 1, r = l + size[l];
+        Profile lp = profiles[l], rp = profiles[r];
+        profiles[l] = profiles[r] = null;
+        int len1 = width[l], len2 = width[r];
+        int mid1 = len1 / 2, mid2 = len2 / 2;
+        if (lp.height > rp.height) {
+            int minSpaces = Integer.MAX_VALUE;
+            for (int row = 0; row < rp.height; row++)
+                minSpaces = Math.min(minSpaces, width[l] - 1 - lp.hi(row));
+            len1 -= Math.min(len2, Math.max(0, minSpaces - 1));
+        } else if (lp.height < rp.height) {
+            int minSpaces = Integer.MAX_VALUE;
+            for (int row = 0; row < lp.height; row++)
+                minSpaces = Math.min(minSpaces, rp.lo(row));
+            len2 -= Math.min(len1, Math.max(0, minSpaces - 1));
+        }
+        int totalLen = len1 + len2 + 1;
+        int leftAdd = 0;
+        if (label.length() < totalLen) {
+            labelX[i] = (totalLen - label.length()) / 2;
+        } else {
+            leftAdd = (label.length() - totalLen) / 2;
+            totalLen = label.length();
+        }
+        width[i] = totalLen;
+        leftX[i] = leftAdd;
+        rightX[i] = leftAdd + len1 + 1 - (width[r] - len2);
+
+        Profile tall = lp.height >= rp.height ? lp : rp, small = tall == lp ? rp : lp;
+        int tallShift = tall == lp ? leftX[i] : rightX[i], smallShift = tall == lp ? rightX[i] : leftX[i];
+        tall.shift += tallShift;
+        for (int row = 0; row < small.height; row++) {
+            tall.set(row, Math.min(tall.lo(row), small.lo(row) + smallShift), Math.max(tall.hi(row), small
+                    .hi(row) + smallShift));
+        }
+        int lPipe = leftPipe[i] = mid1 + leftAdd, rPipe = rightPipe[i] = len1 + len2 + 1 - mid2 + leftAdd;
+        int mid = totalLen / 2;
+        tall.prepend(Math.min(lPipe, rPipe), Math.max(lPipe, rPipe));
+        int dashLo = mid, dashHi = mid + 1;
+        if (lPipe + 1 < rPipe) {
+            dashLo = Math.min(dashLo, lPipe + 1);
+            dashHi = Math.max(dashHi, rPipe - 1);
+        }
+        tall.prepend(dashLo, dashHi);
+        tall.prepend(labelX[i] + leftSpaces(label), labelX[i] + label.length() - 1 - rightSpaces(label));
+        profiles[i] = tall;
+    }
+
+    private List<String> draw(int height) {
+        int n = nodes.length;
+        char[][] rows = new char[height][width[0]];
+        for (char[] row : rows)
+            Arrays.fill(row, ' ');
+        int[] x = new int[n], y = new int[n];
+        for (int i = 0; i < n; i++) {
+            String label = labels[i];
+            label.getChars(0, label.length(), rows[y[i]], x[i] + labelX[i]);
+            if (leaf[i])
+                continue;
+            int l = i + 1, r = l + size[l];
+            x[l] = x[i] + leftX[i];
+            x[r] = x[i] + rightX[i];
+            y[l] = y[r] = y[i] + 3;
+            char[] dashes = rows[y[i] + 1];
+            int mid = x[i] + width[i] / 2, lPipe = x[i] + leftPipe[i], rPipe = x[i] + rightPipe[i];
+            Arrays.fill(dashes, lPipe + 1, Math.max(lPipe + 1, rPipe), '_');
+            dashes[mid] = lPipe == mid ? '|' : '/';
+            dashes[mid + 1] = rPipe - 1 == mid ? '|' : '\\';
+            rows[y[i] + 2][lPipe] = '|';
+            rows[y[i] + 2][rPipe] = '|';
+        }
+        List<String> result = new ArrayList<>(height);
+        for (char[] row : rows)
+            result.add(new String(row));
+        return result;
+    }
+}
@@ -0,0 +1,145 @@
+package one.util.streamtools;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes split trees in the compact binary format which can be read back by
+ * {@link SplitTreeReader}. Several trees can be written one after another
+ * into the same stream.
+ * 
+ * <p>
+ * Every tree is written as the 4-byte magic, the 8-byte start time of the
+ * root and the nodes in pre-order. Every node is the flags byte followed by
+ * the varint-encoded start time delta from the previous node, the duration,
+ * the thread name, the worker index and (for leafs only) the element count,
+ * the first and the last element and the weight. Strings are written once
+ * per tree and then referenced by the index.
+ */
+public class SplitTreeWriter implements Closeable, Flushable {
+    static final int MAGIC = 0x53545231;
+    static final int LEAF = 1, HAS_FIRST = 2, HAS_LAST = 4, HAS_WEIGHT = 8, HAS_WORKER = 16;
+
+    private final OutputStream out;
+    private final byte[] buf = new byte[8192];
+    private int pos;
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    /**
+     * @param out the stream to write to; closed when this writer is closed
+     */
+    public SplitTreeWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the tree
+     * 
+     * @param tree the tree to write
+     * @return this writer
+     * @throws IOException if the underlying stream throws
+     */
+    public SplitTreeWriter write(SplitTree tree) throws IOException {
+        strings.clear();
+        writeFixed(MAGIC, 4);
+        long prevStart = tree.root().getStartNanos();
+        writeFixed(prevStart, 8);
+        for (Iterator<SplitNode> it = SplitTree.preOrder(tree.root()); it.hasNext();) {
+            SplitNode node = it.next();
+            boolean leaf = node.isLeaf();
+            int flags = (leaf ? LEAF : 0) | (node.getWorkerIndex() >= 0 ? HAS_WORKER : 0);
+            if (leaf) {
+                flags |= (node.getCount() > 0 ? HAS_FIRST : 0) | (node.getCount() > 1 ? HAS_LAST : 0)
+                    | (node.getWeight() != node.getCount() ? HAS_WEIGHT : 0);
+            }
+            ensure(1);
+            buf[pos++] = (byte) flags;
+            writeSigned(node.getStartNanos() - prevStart);
+            writeSigned(node.getEndNanos() - node.getStartNanos());
+            prevStart = node.getStartNanos();
+            writeString(node.getThreadName());
+            if ((flags & HAS_WORKER) != 0)
+                writeVarLong(node.getWorkerIndex());
+            if (leaf) {
+                writeVarLong(node.getCount());
+                if ((flags & HAS_FIRST) != 0)
+                    writeString(node.getFirst());
+                if ((flags & HAS_LAST) != 0)
+                    writeString(node.getLast());
+                if ((flags & HAS_WEIGHT) != 0)
+                    writeSigned(node.getWeight());
+            }
+        }
+        return this;
+    }
+
+    private void writeString(String s) throws IOException {
+        Integer index = strings.get(s);
+        if (index != null) {
+            writeVarLong(index + 1);
+            return;
+        }
+        strings.put(s, strings.size());
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(0);
+        writeVarLong(bytes.length);
+        if (bytes.length > buf.length) {
+            flushBuffer();
+            out.write(bytes);
+        } else {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+    }
+
+    private void writeSigned(long value) throws IOException {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+    }
+
+    private void writeFixed(long value, int bytes) throws IOException {
+        ensure(bytes);
+        for (int i = bytes - 1; i >= 0; i--)
+            buf[pos++] = (byte) (value >>> (i * 8));
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (pos + bytes > buf.length)
+            flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buf, 0, pos);
+        pos = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+}
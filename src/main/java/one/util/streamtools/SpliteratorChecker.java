@@ -0,0 +1,352 @@
+package one.util.streamtools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Stress-tests the custom {@link Spliterator} implementation. The fresh
+ * spliterator is split recursively according to several fixed patterns
+ * (balanced, prefix-deep, suffix-deep, partial traversal before every split)
+ * and several random ones, and the parts are traversed concurrently in the
+ * fork-join pool. For every pattern the checker verifies that:
+ * <ul>
+ * <li>the traversed elements are the same (as a multiset) as the ones
+ * produced by the sequential traversal;</li>
+ * <li>the encounter order is preserved if the source is {@code ORDERED};</li>
+ * <li>{@code SIZED} parts traverse exactly {@code estimateSize()} elements,
+ * {@code getExactSizeIfKnown()} agrees with it, the sizes of the
+ * {@code SUBSIZED} parts add up and the estimate does not grow after the
+ * split;</li>
+ * <li>the characteristics are consistent: {@code SUBSIZED} parts are split
+ * into {@code SIZED} parts, {@code getComparator()} matches {@code SORTED},
+ * {@code SORTED}, {@code DISTINCT} and {@code NONNULL} hold for the
+ * elements, the characteristics don't change before the split;</li>
+ * <li>the exhausted part does not produce more elements.</li>
+ * </ul>
+ * Every pattern is run through {@link RecordingSpliterator}, so the report
+ * contains the split tree of every pattern along with its balance and the
+ * throughput.
+ *
+ * <pre>{@code
+ * SpliteratorReport report = new SpliteratorChecker().check(() -> new MySpliterator(data));
+ * report.assertValid();
+ * }</pre>
+ */
+public class SpliteratorChecker {
+    enum Action {
+        SPLIT, ADVANCE_AND_SPLIT, FOR_EACH, ADVANCE_ALL
+    }
+
+    /**
+     * Decides what to do with the part at the given path
+     */
+    interface Strategy {
+        Action next(String path, SplittableRandom random);
+    }
+
+    private int maxDepth = 8;
+    private int randomPatterns = 8;
+    private long seed = 1;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /**
+     * @param maxDepth the maximal depth of the split tree
+     * @return this checker
+     */
+    public SpliteratorChecker maxDepth(int maxDepth) {
+        if (maxDepth < 0)
+            throw new IllegalArgumentException("maxDepth must be non-negative: " + maxDepth);
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * @param randomPatterns the number of random split patterns to check in
+     *        addition to the fixed ones
+     * @return this checker
+     */
+    public SpliteratorChecker randomPatterns(int randomPatterns) {
+        if (randomPatterns < 0)
+            throw new IllegalArgumentException("randomPatterns must be non-negative: " + randomPatterns);
+        this.randomPatterns = randomPatterns;
+        return this;
+    }
+
+    /**
+     * @param seed the seed of the random patterns, so the failed check can be
+     *        reproduced
+     * @return this checker
+     */
+    public SpliteratorChecker seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @param pool the pool to traverse the parts in
+     * @return this checker
+     */
+    public SpliteratorChecker pool(ForkJoinPool pool) {
+        this.pool = Objects.requireNonNull(pool);
+        return this;
+    }
+
+    Map<String, Strategy> patterns() {
+        Map<String, Strategy> patterns = new LinkedHashMap<>();
+        patterns.put("forEachRemaining", (path, random) -> Action.FOR_EACH);
+        patterns.put("tryAdvance", (path, random) -> Action.ADVANCE_ALL);
+        patterns.put("balanced", (path, random) -> path.length() < maxDepth ? Action.SPLIT : Action.FOR_EACH);
+        patterns.put("prefix-deep", (path, random) -> path.length() < maxDepth && !path.endsWith("R") ? Action.SPLIT
+                : Action.FOR_EACH);
+        patterns.put("suffix-deep", (path, random) -> path.length() < maxDepth && !path.endsWith("L") ? Action.SPLIT
+                : Action.ADVANCE_ALL);
+        patterns.put("advance-and-split", (path, random) -> path.length() < maxDepth ? Action.ADVANCE_AND_SPLIT
+                : Action.ADVANCE_ALL);
+        for (int i = 0; i < randomPatterns; i++) {
+            patterns.put("random-" + i, (path, random) -> {
+                int r = random.nextInt(path.length() < maxDepth ? 6 : 2);
+                return r == 0 ? Action.FOR_EACH : r == 1 ? Action.ADVANCE_ALL : r == 2 ? Action.ADVANCE_AND_SPLIT
+                        : Action.SPLIT;
+            });
+        }
+        return patterns;
+    }
+
+    /**
+     * Checks the spliterators created by the supplied factory. Every call of
+     * the factory must create the spliterator over the same elements.
+     *
+     * @param <T> type of the elements
+     * @param factory the factory which creates a fresh spliterator
+     * @return the report for all the patterns
+     */
+    public <T> SpliteratorReport check(Supplier<? extends Spliterator<T>> factory) {
+        Spliterator<T> reference = factory.get();
+        int characteristics = reference.characteristics();
+        List<T> expected = new ArrayList<>();
+        reference.forEachRemaining(expected::add);
+        List<SpliteratorReport.Entry> entries = new ArrayList<>();
+        int i = 0;
+        for (Map.Entry<String, Strategy> pattern : patterns().entrySet()) {
+            Run<T> run = new Run<>(pattern.getValue());
+            RecordingSpliterator<T> spliterator = new RecordingSpliterator<>(factory.get());
+            List<T> actual = null;
+            long start = System.nanoTime();
+            try {
+                actual = pool.invoke(run.new PartTask(spliterator, "", new SplittableRandom(seed + i++)));
+            } catch (RuntimeException e) {
+                run.violation("", "threw " + e);
+            }
+            long nanos = System.nanoTime() - start;
+            List<String> violations = run.violations();
+            if (actual != null)
+                violations.addAll(compare(expected, actual, characteristics, reference));
+            entries.add(new SpliteratorReport.Entry(pattern.getKey(), spliterator.tree(), violations, nanos,
+                    actual == null ? 0 : actual.size()));
+        }
+        return new SpliteratorReport(entries);
+    }
+
+    private static <T> List<String> compare(List<T> expected, List<T> actual, int characteristics,
+            Spliterator<T> reference) {
+        List<String> violations = new ArrayList<>();
+        Map<T, Integer> counts = new HashMap<>();
+        for (T t : expected)
+            counts.merge(t, 1, Integer::sum);
+        for (T t : actual)
+            counts.merge(t, -1, Integer::sum);
+        List<String> missing = new ArrayList<>(), extra = new ArrayList<>();
+        for (Map.Entry<T, Integer> e : counts.entrySet()) {
+            for (int i = e.getValue(); i > 0 && missing.size() < 3; i--)
+                missing.add(String.valueOf(e.getKey()));
+            for (int i = e.getValue(); i < 0 && extra.size() < 3; i++)
+                extra.add(String.valueOf(e.getKey()));
+        }
+        if (!missing.isEmpty() || !extra.isEmpty()) {
+            violations.add("elements differ from the sequential traversal: " + expected.size() + " expected, "
+                + actual.size() + " traversed" + (missing.isEmpty() ? "" : ", missing " + missing)
+                + (extra.isEmpty() ? "" : ", extra " + extra));
+        } else if ((characteristics & Spliterator.ORDERED) != 0) {
+            for (int i = 0; i < expected.size(); i++) {
+                if (!Objects.equals(expected.get(i), actual.get(i))) {
+                    violations.add("ORDERED but the encounter order differs at index " + i + ": expected "
+                        + expected.get(i) + ", got " + actual.get(i));
+                    break;
+                }
+            }
+        }
+        if ((characteristics & Spliterator.DISTINCT) != 0 && new HashSet<>(actual).size() != actual.size())
+            violations.add("DISTINCT but the elements contain duplicates");
+        if ((characteristics & Spliterator.NONNULL) != 0 && actual.contains(null))
+            violations.add("NONNULL but the elements contain null");
+        if ((characteristics & Spliterator.SORTED) != 0) {
+            int index = unsortedIndex(actual, reference);
+            if (index >= 0)
+                violations.add("SORTED but the element at index " + index + " is less than the previous one");
+        }
+        return violations;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> int unsortedIndex(List<T> list, Spliterator<T> reference) {
+        Comparator<? super T> comparator;
+        try {
+            comparator = reference.getComparator();
+        } catch (IllegalStateException e) {
+            return -1;
+        }
+        if (comparator == null)
+            comparator = (a, b) -> ((Comparable<Object>) a).compareTo(b);
+        try {
+            for (int i = 1; i < list.size(); i++) {
+                if (comparator.compare(list.get(i - 1), list.get(i)) > 0)
+                    return i;
+            }
+        } catch (ClassCastException e) {
+            // the elements are not mutually comparable, so the order cannot be checked
+        }
+        return -1;
+    }
+
+    private static final class Run<T> {
+        private final Strategy strategy;
+        private final ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+
+        Run(Strategy strategy) {
+            this.strategy = strategy;
+        }
+
+        void violation(String path, String message) {
+            violations.add((path.isEmpty() ? "root" : path) + ": " + message);
+        }
+
+        List<String> violations() {
+            List<String> result = new ArrayList<>(violations);
+            Collections.sort(result);
+            return result;
+        }
+
+        void checkPart(Spliterator<T> spliterator, String path) {
+            int characteristics = spliterator.characteristics();
+            long size = spliterator.estimateSize(), exactSize = spliterator.getExactSizeIfKnown();
+            if ((characteristics & Spliterator.SIZED) != 0 ? exactSize != size : exactSize != -1) {
+                violation(path, "getExactSizeIfKnown() = " + exactSize + " is inconsistent with estimateSize() = "
+                    + size + " for " + characteristicsString(characteristics));
+            }
+            if ((characteristics & Spliterator.SORTED) != 0) {
+                try {
+                    spliterator.getComparator();
+                } catch (IllegalStateException e) {
+                    violation(path, "SORTED but getComparator() throws " + e);
+                }
+            } else {
+                try {
+                    spliterator.getComparator();
+                    violation(path, "getComparator() does not throw IllegalStateException when not SORTED");
+                } catch (IllegalStateException e) {
+                    // expected
+                }
+            }
+        }
+
+        void checkSplit(long size, int characteristics, Spliterator<T> prefix, Spliterator<T> suffix,
+                String path) {
+            long prefixSize = prefix.estimateSize(), suffixSize = suffix.estimateSize();
+            if ((characteristics & Spliterator.SUBSIZED) != 0) {
+                if (!hasSize(prefix) || !hasSize(suffix))
+                    violation(path, "SUBSIZED but the parts are " + characteristicsString(prefix.characteristics())
+                        + " and " + characteristicsString(suffix.characteristics()));
+                else if (prefixSize + suffixSize != size)
+                    violation(path, "SUBSIZED but the part sizes " + prefixSize + " + " + suffixSize + " != "
+                        + size);
+            } else if (size != Long.MAX_VALUE && (prefixSize > size || suffixSize > size)) {
+                violation(path, "estimateSize() grew after the split: " + size + " -> " + prefixSize + " + "
+                    + suffixSize);
+            }
+        }
+
+        private static boolean hasSize(Spliterator<?> spliterator) {
+            return spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED);
+        }
+
+        final class PartTask extends RecursiveTask<List<T>> {
+            private static final long serialVersionUID = 1L;
+            private final Spliterator<T> spliterator;
+            private final String path;
+            private final SplittableRandom random;
+
+            PartTask(Spliterator<T> spliterator, String path, SplittableRandom random) {
+                this.spliterator = spliterator;
+                this.path = path;
+                this.random = random;
+            }
+
+            @Override
+            protected List<T> compute() {
+                List<T> result = new ArrayList<>();
+                checkPart(spliterator, path);
+                int characteristics = spliterator.characteristics();
+                Action action = strategy.next(path, random);
+                if (action == Action.ADVANCE_AND_SPLIT) {
+                    for (int i = random.nextInt(3); i >= 0 && spliterator.tryAdvance(result::add); i--) {
+                        // consumed
+                    }
+                    action = Action.SPLIT;
+                }
+                if (action == Action.SPLIT) {
+                    long size = spliterator.estimateSize();
+                    int current = spliterator.characteristics();
+                    if (current != characteristics)
+                        violation(path, "characteristics changed before the split: " + characteristicsString(
+                            characteristics) + " -> " + characteristicsString(current));
+                    Spliterator<T> prefix = spliterator.trySplit();
+                    if (prefix != null) {
+                        checkSplit(size, current, prefix, spliterator, path);
+                        PartTask left = new PartTask(prefix, path + "L", random.split());
+                        PartTask right = new PartTask(spliterator, path + "R", random.split());
+                        invokeAll(left, right);
+                        result.addAll(left.join());
+                        result.addAll(right.join());
+                        return result;
+                    }
+                    action = random.nextBoolean() ? Action.FOR_EACH : Action.ADVANCE_ALL;
+                }
+                long size = spliterator.estimateSize();
+                boolean sized = spliterator.hasCharacteristics(Spliterator.SIZED);
+                int before = result.size();
+                if (action == Action.FOR_EACH) {
+                    spliterator.forEachRemaining(result::add);
+                } else {
+                    while (spliterator.tryAdvance(result::add)) {
+                        // consumed
+                    }
+                }
+                int traversed = result.size() - before;
+                if (sized && traversed != size)
+                    violation(path, "SIZED with estimateSize() = " + size + " but " + traversed
+                        + " elements traversed");
+                if (spliterator.tryAdvance(result::add))
+                    violation(path, "tryAdvance() returned true after the traversal was finished");
+                return result;
+            }
+        }
+    }
+
+    private static String characteristicsString(int characteristics) {
+        String result = RecordedSplitNode.characteristicsString(characteristics);
+        return result.isEmpty() ? "no characteristics" : result;
+    }
+}
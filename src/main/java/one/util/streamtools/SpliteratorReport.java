@@ -0,0 +1,164 @@
+package one.util.streamtools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The result of the {@link SpliteratorChecker#check(java.util.function.Supplier)}:
+ * the violations, the split tree and the throughput for every split pattern
+ */
+public class SpliteratorReport {
+    private final List<Entry> entries;
+
+    /**
+     * The result of the check for the single split pattern
+     */
+    public static class Entry {
+        private final String pattern;
+        private final SplitTree tree;
+        private final List<String> violations;
+        private final long nanos;
+        private final long count;
+
+        Entry(String pattern, SplitTree tree, List<String> violations, long nanos, long count) {
+            this.pattern = pattern;
+            this.tree = tree;
+            this.violations = Collections.unmodifiableList(violations);
+            this.nanos = nanos;
+            this.count = count;
+        }
+
+        /**
+         * @return the name of the split pattern
+         */
+        public String getPattern() {
+            return pattern;
+        }
+
+        /**
+         * @return the split tree recorded for this pattern
+         */
+        public SplitTree getTree() {
+            return tree;
+        }
+
+        /**
+         * @return the split balance report of the recorded tree
+         */
+        public SplitTreeAnalysis getAnalysis() {
+            return tree.analyze();
+        }
+
+        /**
+         * @return the descriptions of the detected contract violations
+         *         prefixed with the path of the part (like {@code LR}) where
+         *         it was detected
+         */
+        public List<String> getViolations() {
+            return violations;
+        }
+
+        /**
+         * @return true if no violations were detected
+         */
+        public boolean isValid() {
+            return violations.isEmpty();
+        }
+
+        /**
+         * @return the wall time of the splitting and the traversal
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return the number of the traversed elements
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the number of the traversed elements per second
+         */
+        public double getThroughput() {
+            return nanos == 0 ? 0 : count * 1e9 / nanos;
+        }
+    }
+
+    SpliteratorReport(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return the entries in the order the patterns were checked
+     */
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * @param pattern the name of the pattern
+     * @return the entry for the given pattern
+     * @throws IllegalArgumentException if there's no such pattern
+     */
+    public Entry entry(String pattern) {
+        for (Entry entry : entries) {
+            if (entry.pattern.equals(pattern))
+                return entry;
+        }
+        throw new IllegalArgumentException("Unknown pattern: " + pattern);
+    }
+
+    /**
+     * @return true if no violations were detected for all the patterns
+     */
+    public boolean isValid() {
+        for (Entry entry : entries) {
+            if (!entry.isValid())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return all the detected violations prefixed with the pattern name
+     */
+    public List<String> violations() {
+        List<String> result = new ArrayList<>();
+        for (Entry entry : entries) {
+            for (String violation : entry.violations)
+                result.add(entry.pattern + ": " + violation);
+        }
+        return result;
+    }
+
+    /**
+     * Fails if any violation was detected
+     *
+     * @throws AssertionError with the whole report if any violation was
+     *         detected
+     */
+    public void assertValid() {
+        if (!isValid())
+            throw new AssertionError("Spliterator contract is violated:\n" + this);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format(Locale.ENGLISH, "%-18s %10s %6s %5s %9s %14s%n",
+            "pattern", "violations", "leafs", "depth", "imbalance", "elements/s"));
+        for (Entry e : entries) {
+            SplitTreeAnalysis analysis = e.getAnalysis();
+            sb.append(String.format(Locale.ENGLISH, "%-18s %10d %6d %5d %9.2f %14.0f%n", e.pattern,
+                e.violations.size(), analysis.leafSizes().getCount(), analysis.maxDepth(), analysis.imbalance(),
+                e.getThroughput()));
+        }
+        for (String violation : violations())
+            sb.append(violation).append(System.lineSeparator());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,224 @@
+package one.util.streamtools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Attributes the time of every leaf of the split tree to the individual
+ * pipeline stages. The source stream is wrapped to record the splits and the
+ * functional arguments of the stages are wrapped with named hooks:
+ * 
+ * <pre>{@code
+ * StageTracer<String> tracer = StageTracer.wrap(lines.parallelStream());
+ * long count = tracer.stream()
+ *         .filter(tracer.filter("nonEmpty", s -> !s.isEmpty()))
+ *         .map(tracer.map("parse", Integer::parseInt))
+ *         .filter(tracer.filter("even", x -> x % 2 == 0))
+ *         .count();
+ * SplitTree tree = tracer.tree(); // nodes are TracedSplitNodes
+ * System.out.println(tracer);
+ * }</pre>
+ * 
+ * Only the time of the wrapped function itself is attributed to the stage
+ * (for {@code flatMap} it's the time to create the inner stream, not to
+ * traverse it). The hooks are effective only while the stream is traversed by
+ * the threads processing the source parts. The parts abandoned by a
+ * short-circuiting terminal operation stay current for their threads until
+ * the stream is closed or the {@link #tree()} is requested.
+ * 
+ * @param <T> type of the source elements
+ */
+public class StageTracer<T> {
+    // holders don't reference the tracer, so the entries left in the pool
+    // threads don't retain it
+    private final ThreadLocal<AtomicReference<TracedSplitNode>> current = new ThreadLocal<>();
+    private final Set<AtomicReference<TracedSplitNode>> holders = ConcurrentHashMap.newKeySet();
+    private final List<String> stages = new ArrayList<>();
+    private final int timeMask;
+    private final RecordingSpliterator<T> spliterator;
+    private final Stream<T> stream;
+
+    private StageTracer(Stream<T> source, int timeSampling) {
+        if (timeSampling < 1)
+            throw new IllegalArgumentException("timeSampling must be positive: " + timeSampling);
+        this.timeMask = timeSampling == 1 ? 0 : Integer.highestOneBit(Math.min(timeSampling - 1, 1 << 29)) * 2 - 1;
+        this.spliterator = new RecordingSpliterator<>(source.spliterator(), s -> new TracedSplitNode(s, this),
+                tree -> {
+                    // tree is requested explicitly
+                });
+        this.stream = StreamSupport.stream(spliterator, source.isParallel()).onClose(this::release).onClose(
+            source::close);
+    }
+
+    void enter(TracedSplitNode node) {
+        AtomicReference<TracedSplitNode> holder = current.get();
+        if (holder == null) {
+            holder = new AtomicReference<>();
+            current.set(holder);
+            holders.add(holder);
+        }
+        holder.set(node);
+    }
+
+    void exit(TracedSplitNode node) {
+        AtomicReference<TracedSplitNode> holder = current.get();
+        if (holder != null)
+            holder.compareAndSet(node, null);
+    }
+
+    private TracedSplitNode current() {
+        AtomicReference<TracedSplitNode> holder = current.get();
+        return holder == null ? null : holder.get();
+    }
+
+    /**
+     * Detaches the nodes which were not completed (due to short-circuiting)
+     * from the threads which traversed them
+     */
+    private void release() {
+        for (AtomicReference<TracedSplitNode> holder : holders)
+            holder.set(null);
+    }
+
+    /**
+     * Wraps the stream timing every call of the stage functions
+     * 
+     * @param <T> type of the stream elements
+     * @param stream the source stream
+     * @return the tracer
+     */
+    public static <T> StageTracer<T> wrap(Stream<T> stream) {
+        return new StageTracer<>(stream, 1);
+    }
+
+    /**
+     * Wraps the stream timing only one of every {@code timeSampling} calls of
+     * every stage function per leaf; the stage time is extrapolated.
+     * 
+     * @param <T> type of the stream elements
+     * @param stream the source stream
+     * @param timeSampling how often (in calls) the stage functions are timed;
+     *        rounded up to the power of two
+     * @return the tracer
+     */
+    public static <T> StageTracer<T> wrap(Stream<T> stream, int timeSampling) {
+        return new StageTracer<>(stream, timeSampling);
+    }
+
+    /**
+     * @return the stream to build the pipeline on; may be consumed only once
+     */
+    public Stream<T> stream() {
+        return stream;
+    }
+
+    /**
+     * Returns the tree recorded so far. The stage calls made after this
+     * method is called are not attributed to the parts which are still being
+     * traversed.
+     * 
+     * @return the tree of {@link TracedSplitNode}s recorded so far
+     */
+    public SplitTree tree() {
+        release();
+        return spliterator.tree();
+    }
+
+    /**
+     * @return the stage names in the order of their creation
+     */
+    public synchronized List<String> stages() {
+        return Collections.unmodifiableList(new ArrayList<>(stages));
+    }
+
+    private synchronized int stage(String name) {
+        int index = stages.indexOf(name);
+        if (index >= 0)
+            return index;
+        stages.add(name);
+        return stages.size() - 1;
+    }
+
+    /**
+     * @param <A> type of the function argument
+     * @param <R> type of the function result
+     * @param name the stage name; hooks with the same name are accounted
+     *        together
+     * @param mapper the function to pass to {@code map} or {@code flatMap}
+     * @return the traced function
+     */
+    public <A, R> Function<A, R> map(String name, Function<? super A, ? extends R> mapper) {
+        int stage = stage(name);
+        return a -> {
+            TracedSplitNode node = current();
+            if (node == null || !node.count(stage, timeMask))
+                return mapper.apply(a);
+            long start = System.nanoTime();
+            R result = mapper.apply(a);
+            node.addNanos(stage, System.nanoTime() - start);
+            return result;
+        };
+    }
+
+    /**
+     * @param <A> type of the predicate argument
+     * @param name the stage name; hooks with the same name are accounted
+     *        together
+     * @param predicate the predicate to pass to {@code filter}
+     * @return the traced predicate
+     */
+    public <A> Predicate<A> filter(String name, Predicate<? super A> predicate) {
+        int stage = stage(name);
+        return a -> {
+            TracedSplitNode node = current();
+            if (node == null || !node.count(stage, timeMask))
+                return predicate.test(a);
+            long start = System.nanoTime();
+            boolean result = predicate.test(a);
+            node.addNanos(stage, System.nanoTime() - start);
+            return result;
+        };
+    }
+
+    /**
+     * @param <A> type of the consumer argument
+     * @param name the stage name; hooks with the same name are accounted
+     *        together
+     * @param action the action to pass to {@code peek} or {@code forEach}
+     * @return the traced action
+     */
+    public <A> Consumer<A> peek(String name, Consumer<? super A> action) {
+        int stage = stage(name);
+        return a -> {
+            TracedSplitNode node = current();
+            if (node == null || !node.count(stage, timeMask)) {
+                action.accept(a);
+                return;
+            }
+            long start = System.nanoTime();
+            action.accept(a);
+            node.addNanos(stage, System.nanoTime() - start);
+        };
+    }
+
+    @Override
+    public String toString() {
+        TracedSplitNode root = (TracedSplitNode) tree().root();
+        StringBuilder sb = new StringBuilder();
+        for (String stage : stages()) {
+            sb.append(String.format(Locale.ENGLISH, "%s: %d elements, %d ns%n", stage, root.getStageCount(stage),
+                root.getStageNanos(stage)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,98 @@
+package one.util.streamtools;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * The thread recorded by the split node: its ID and its name. The instance is
+ * cached per thread and shared by all the nodes the thread creates, so
+ * creating a node costs a single thread-local lookup. The name is re-checked
+ * only when the tree is built by {@link #refresh()}: if the building thread
+ * was renamed, the tree nodes it created get the new identity. The renaming
+ * of other threads is not tracked. Nothing is registered
+ * globally: the names live as long as the nodes referencing them. The pool of
+ * the fork-join worker is referenced weakly, so a retained tree doesn't keep
+ * a custom pool alive.
+ */
+final class ThreadIdentity {
+    private static final ThreadLocal<ThreadIdentity> CURRENT = new ThreadLocal<>();
+
+    final long id;
+    final String name;
+    private final WeakReference<ForkJoinPool> pool;
+
+    ThreadIdentity(long id, String name) {
+        this(id, name, null);
+    }
+
+    private ThreadIdentity(long id, String name, ForkJoinPool pool) {
+        this.id = id;
+        this.name = name;
+        this.pool = pool == null ? null : new WeakReference<>(pool);
+    }
+
+    /**
+     * @param thread the current thread
+     * @return the cached identity of the current thread
+     */
+    static ThreadIdentity of(Thread thread) {
+        ThreadIdentity identity = CURRENT.get();
+        if (identity == null) {
+            identity = create(thread);
+            CURRENT.set(identity);
+        }
+        return identity;
+    }
+
+    private static ThreadIdentity create(Thread thread) {
+        return new ThreadIdentity(thread.getId(), thread.getName(), thread instanceof ForkJoinWorkerThread
+                ? ((ForkJoinWorkerThread) thread).getPool() : null);
+    }
+
+    /**
+     * Re-checks the name of the current thread replacing the cached identity
+     * if the thread was renamed
+     * 
+     * @return the replaced identity or null if the name is unchanged
+     */
+    static ThreadIdentity refresh() {
+        ThreadIdentity identity = CURRENT.get();
+        Thread current = Thread.currentThread();
+        if (identity == null || identity.name.equals(current.getName()))
+            return null;
+        CURRENT.set(create(current));
+        return identity;
+    }
+
+    /**
+     * @return the pool of the fork-join worker thread or null if it's not a
+     *         worker or its pool was garbage collected
+     */
+    ForkJoinPool pool() {
+        return pool == null ? null : pool.get();
+    }
+
+    /**
+     * @param id the thread ID
+     * @return the identity of the thread known only by its ID
+     */
+    static ThreadIdentity unknown(long id) {
+        return new ThreadIdentity(id, "Thread-" + id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id) * 31 + name.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this)
+            return true;
+        if (!(obj instanceof ThreadIdentity))
+            return false;
+        ThreadIdentity that = (ThreadIdentity) obj;
+        return id == that.id && name.equals(that.name);
+    }
+}
@@ -1,71 +1,171 @@
 package one.util.streamtools;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collector;
-import java.util.stream.Collectors;
 
+/**
+ * Formats the split tree as the per-thread time line. Every leaf is shown as
+ * {@code [first..last]} stretched to its duration, combining (or splitting)
+ * nodes are shown as {@code +} and the time cells where several nodes of the
+ * same thread overlap are marked with {@code #}.
+ */
 public class TimeLineFormatter {
+    private static final int DEFAULT_WIDTH = 120;
+    /**
+     * The maximal number of characters per time line
+     */
+    static final int MAX_LENGTH = 1 << 20;
+    private static final char COMBINE = '+', OVERLAP = '#';
+
+    private static class TimeLine {
+        final char[] buf;
+        final BitSet used;
+
+        TimeLine(int length) {
+            buf = new char[length];
+            Arrays.fill(buf, ' ');
+            used = new BitSet(length);
+        }
+
+        void draw(int start, String text) {
+            for (int i = 0; i < text.length(); i++) {
+                int pos = start + i;
+                if (used.get(pos)) {
+                    buf[pos] = OVERLAP;
+                } else {
+                    buf[pos] = text.charAt(i);
+                    used.set(pos);
+                }
+            }
+        }
+    }
+
+    /**
+     * Formats the time line with the fixed time quantum
+     * 
+     * @param tree the tree to format
+     * @param quantum the number of nanoseconds per character
+     * @return the list of lines (one per thread)
+     * @throws IllegalArgumentException if the quantum is not positive or so
+     *         small that the time line would be longer than 1048576
+     *         characters (use {@link #formatToWidth(SplitTree, int)} in this
+     *         case)
+     */
     public static List<String> format(SplitTree tree, long quantum) {
-        long startTime = tree.leafs().mapToLong(SplitNode::getStartNanos).min().getAsLong();
-        long endTime = tree.leafs().mapToLong(SplitNode::getEndNanos).max().getAsLong();
-        Map<String, String> perThread = tree.leafs()
-                .sorted(Comparator.comparingLong(SplitNode::getStartNanos))
-                .collect(Collectors.groupingBy(SplitNode::getThreadName, formatTimeLine(quantum, startTime, endTime)));
-        int maxLen = perThread.keySet().stream().mapToInt(String::length).max().getAsInt();
-        return perThread.entrySet().stream()
-                .map(entry -> String.format(Locale.ENGLISH, "%" + maxLen + "s : %s", entry.getKey(), entry.getValue()))
-                .sorted().collect(Collectors.toList());
+        if (quantum <= 0)
+            throw new IllegalArgumentException("quantum must be positive: " + quantum);
+        long startTime = Long.MAX_VALUE, endTime = Long.MIN_VALUE;
+        for (Iterator<SplitNode> it = SplitTree.preOrder(tree.root()); it.hasNext();) {
+            SplitNode node = it.next();
+            startTime = Math.min(startTime, node.getStartNanos());
+            endTime = Math.max(endTime, node.getEndNanos());
+        }
+        long length = (endTime - startTime) / quantum + 1;
+        if (length > MAX_LENGTH)
+            throw new IllegalArgumentException("quantum " + quantum + " is too small: the time line would be "
+                + length + " characters long (at most " + MAX_LENGTH + " allowed)");
+        return format(tree, quantum, startTime, (int) length);
     }
 
-    private static Collector<SplitNode, ?, String> formatTimeLine(long quantum, long startTime, long endTime) {
-        int length = (int) ((endTime - startTime) / quantum) + 1;
-        return Collector.of(() -> {
-            char[] buf = new char[length];
-            Arrays.fill(buf, ' ');
-            return buf;
-        }, (buf, node) -> {
+    /**
+     * Formats the time line which fits into the default width
+     * 
+     * @param tree the tree to format
+     * @return the list of lines (one per thread)
+     */
+    public static List<String> format(SplitTree tree) {
+        return formatToWidth(tree, DEFAULT_WIDTH);
+    }
+
+    /**
+     * Formats the time line selecting the time quantum automatically, so the
+     * whole time line fits into the given width (not counting the thread
+     * names)
+     * 
+     * @param tree the tree to format
+     * @param width the maximal number of characters per time line
+     * @return the list of lines (one per thread)
+     */
+    public static List<String> formatToWidth(SplitTree tree, int width) {
+        if (width <= 0)
+            throw new IllegalArgumentException("width must be positive: " + width);
+        long totalNanos = tree.totalNanos();
+        return format(tree, totalNanos / width + 1);
+    }
+
+    private static List<String> format(SplitTree tree, long quantum, long startTime, int length) {
+        Map<String, TimeLine> perThread = new HashMap<>();
+        List<SplitNode> nodes = new ArrayList<>();
+        for (Iterator<SplitNode> it = SplitTree.preOrder(tree.root()); it.hasNext();)
+            nodes.add(it.next());
+        nodes.sort((a, b) -> Long.compare(a.getStartNanos(), b.getStartNanos()));
+        int maxLen = 0;
+        for (SplitNode node : nodes) {
+            TimeLine line = perThread.get(node.getThreadName());
+            if (line == null) {
+                line = new TimeLine(length);
+                perThread.put(node.getThreadName(), line);
+                maxLen = Math.max(maxLen, node.getThreadName().length());
+            }
             int start = (int) ((node.getStartNanos() - startTime) / quantum);
-            if(buf[start] != ' ')
-                start++;
             int end = (int) ((node.getEndNanos() - startTime) / quantum);
-            if(end < start)
-                end++;
+            // the previous node may end in the same cell
+            if (start < end && line.used.get(start))
+                start++;
             int l = end - start + 1;
-            String startStr = "[" + node.getFirst();
-            String endStr = node.getLast() + "]";
-            if (startStr.length() + endStr.length() + 2 >= l)
-                endStr = "]";
-            String result;
-            if (startStr.length() + endStr.length() + 2 >= l) {
-                switch (l) {
-                case 1:
-                    result = "|";
-                    break;
-                case 2:
-                    result = "[]";
-                    break;
-                case 3:
-                    result = "[.]";
-                    break;
-                default:
-                    result = startStr.substring(0, l - 3) + "..]";
-                }
-            } else {
-                int mid = (l - startStr.length() - endStr.length()) / 2 + 2;
-                int fin = l - startStr.length() - mid;
-                result = String.format(Locale.ENGLISH, "%s%" + mid + "s%" + fin + "s", startStr, "..", endStr);
-            }
-            result.getChars(0, result.length(), buf, start);
-        }, (buf1, buf2) -> {
-            for (int i = 0; i < buf2.length; i++) {
-                if (buf2[i] != ' ')
-                    buf1[i] = buf2[i];
+            line.draw(start, node.isLeaf() ? leafText(node, l) : repeat(COMBINE, l));
+        }
+        List<String> result = new ArrayList<>(perThread.size());
+        for (Map.Entry<String, TimeLine> entry : perThread.entrySet()) {
+            StringBuilder sb = new StringBuilder(maxLen + 3 + length);
+            for (int i = entry.getKey().length(); i < maxLen; i++)
+                sb.append(' ');
+            result.add(sb.append(entry.getKey()).append(" : ").append(entry.getValue().buf).toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private static String repeat(char c, int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static String leafText(SplitNode node, int l) {
+        if (l == 1)
+            return "|";
+        if (node.isEmpty())
+            return "(" + repeat(' ', l - 2) + ")";
+        String startStr = "[" + node.getFirst();
+        String endStr = node.getCount() == 1 ? "]" : node.getLast() + "]";
+        if (startStr.length() + endStr.length() + 2 >= l)
+            endStr = "]";
+        if (node.getCount() == 1 && startStr.length() + endStr.length() <= l) {
+            return startStr + endStr + repeat(' ', l - startStr.length() - endStr.length());
+        }
+        if (startStr.length() + endStr.length() + 2 >= l) {
+            switch (l) {
+            case 2:
+                return "[]";
+            case 3:
+                return "[.]";
+            default:
+                return startStr.substring(0, Math.min(startStr.length(), l - 3)) + "..]";
             }
-            return buf1;
-        }, String::new);
+        }
+        char[] result = new char[l];
+        Arrays.fill(result, ' ');
+        startStr.getChars(0, startStr.length(), result, 0);
+        int dots = (l - startStr.length() - endStr.length()) / 2 + startStr.length();
+        result[dots] = result[dots + 1] = '.';
+        endStr.getChars(0, endStr.length(), result, l - endStr.length());
+        return new String(result);
     }
 }
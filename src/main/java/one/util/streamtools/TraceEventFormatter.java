@@ -0,0 +1,88 @@
+package one.util.streamtools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Exports the split tree in Chrome trace event JSON format which can be
+ * loaded into {@code chrome://tracing} or Perfetto UI. Every node becomes a
+ * complete event on the track of the thread which processed it: leafs
+ * (category {@code "leaf"}) span the accumulation and splitting nodes
+ * (category {@code "combine"}) span the combining or splitting.
+ */
+public class TraceEventFormatter implements SplitTreeExporter {
+    private String processName = "Stream";
+
+    public TraceEventFormatter processName(String name) {
+        this.processName = name;
+        return this;
+    }
+
+    @Override
+    public void writeTo(SplitTree tree, Writer writer) throws IOException {
+        long startTime = Long.MAX_VALUE;
+        for (Iterator<SplitNode> it = SplitTree.preOrder(tree.root()); it.hasNext();)
+            startTime = Math.min(startTime, it.next().getStartNanos());
+        Map<String, Integer> threadIds = new HashMap<>();
+        writer.write("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[\n");
+        writer.write("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"args\":{\"name\":");
+        string(writer, processName);
+        writer.write("}}");
+        for (Iterator<SplitNode> it = SplitTree.preOrder(tree.root()); it.hasNext();) {
+            SplitNode node = it.next();
+            Integer tid = threadIds.get(node.getThreadName());
+            if (tid == null) {
+                tid = threadIds.size() + 1;
+                threadIds.put(node.getThreadName(), tid);
+                writer.write(",\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + tid
+                    + ",\"args\":{\"name\":");
+                string(writer, node.getThreadName());
+                writer.write("}}");
+            }
+            writer.write(",\n{\"name\":");
+            string(writer, node.toString());
+            writer.write(",\"cat\":\"" + (node.isLeaf() ? "leaf" : "combine") + "\",\"ph\":\"X\",\"pid\":1,\"tid\":"
+                + tid + ",\"ts\":" + micros(node.getStartNanos() - startTime) + ",\"dur\":"
+                + micros(node.getEndNanos() - node.getStartNanos()) + ",\"args\":{\"count\":" + node.getCount()
+                + "}}");
+        }
+        writer.write("\n]}\n");
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ENGLISH, "%.3f", nanos / 1000.0);
+    }
+
+    private static void string(Writer writer, String text) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+                writer.write('\\');
+                writer.write(c);
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            case '\r':
+                writer.write("\\r");
+                break;
+            case '\t':
+                writer.write("\\t");
+                break;
+            default:
+                if (c < ' ')
+                    writer.write(String.format(Locale.ENGLISH, "\\u%04x", (int) c));
+                else
+                    writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,107 @@
+package one.util.streamtools;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+
+/**
+ * {@link RecordedSplitNode} created by {@link StageTracer} which additionally
+ * holds the number of elements and the (estimated) time spent in every traced
+ * pipeline stage while the corresponding part of the source was traversed.
+ * For splitting nodes the values of the children are summed.
+ */
+public class TracedSplitNode extends RecordedSplitNode {
+    private final StageTracer<?> tracer;
+    private long[] counts = new long[0];
+    private long[] sampledCounts = new long[0];
+    private long[] sampledNanos = new long[0];
+
+    TracedSplitNode(Spliterator<?> spliterator, StageTracer<?> tracer) {
+        super(spliterator);
+        this.tracer = tracer;
+    }
+
+    @Override
+    void begin() {
+        super.begin();
+        tracer.enter(this);
+    }
+
+    @Override
+    void complete() {
+        super.complete();
+        tracer.exit(this);
+    }
+
+    private void ensure(int stage) {
+        if (stage >= counts.length) {
+            int length = Math.max(stage + 1, counts.length * 2);
+            counts = Arrays.copyOf(counts, length);
+            sampledCounts = Arrays.copyOf(sampledCounts, length);
+            sampledNanos = Arrays.copyOf(sampledNanos, length);
+        }
+    }
+
+    /**
+     * Counts the element passed to the stage
+     * 
+     * @return true if the stage call should be timed
+     */
+    boolean count(int stage, int timeMask) {
+        ensure(stage);
+        if ((counts[stage]++ & timeMask) != 0)
+            return false;
+        sampledCounts[stage]++;
+        return true;
+    }
+
+    void addNanos(int stage, long nanos) {
+        sampledNanos[stage] += nanos;
+    }
+
+    @Override
+    void joinValues(SplitNode l, SplitNode r) {
+        super.joinValues(l, r);
+        TracedSplitNode left = (TracedSplitNode) l, right = (TracedSplitNode) r;
+        int length = Math.max(left.counts.length, right.counts.length);
+        counts = sum(left.counts, right.counts, length);
+        sampledCounts = sum(left.sampledCounts, right.sampledCounts, length);
+        sampledNanos = sum(left.sampledNanos, right.sampledNanos, length);
+    }
+
+    private static long[] sum(long[] a, long[] b, int length) {
+        long[] result = Arrays.copyOf(a, length);
+        for (int i = 0; i < b.length; i++)
+            result[i] += b[i];
+        return result;
+    }
+
+    /**
+     * @return the names of the traced stages in the order of their creation
+     */
+    public List<String> getStages() {
+        return tracer.stages();
+    }
+
+    /**
+     * @param stage the stage name
+     * @return number of elements which entered the stage
+     */
+    public long getStageCount(String stage) {
+        int index = tracer.stages().indexOf(stage);
+        return index < 0 || index >= counts.length ? 0 : counts[index];
+    }
+
+    /**
+     * @param stage the stage name
+     * @return the time spent in the stage function; if the time sampling is
+     *         used, it's extrapolated from the timed calls
+     */
+    public long getStageNanos(String stage) {
+        int index = tracer.stages().indexOf(stage);
+        if (index < 0 || index >= counts.length || sampledCounts[index] == 0)
+            return 0;
+        return sampledCounts[index] == counts[index] ? sampledNanos[index] : (long) ((double) sampledNanos[index]
+            * counts[index] / sampledCounts[index]);
+    }
+}
@@ -1,113 +1,108 @@
 package one.util.streamtools;
 
-import java.io.OutputStream;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.IntSummaryStatistics;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
-public class XGMLFormatter {
+public class XGMLFormatter implements SplitTreeExporter {
+    private static final int LEVEL_HEIGHT = 70, GAP = 30;
+    private static final String LEAF_COLOR = "#EEDDAA", SPLIT_COLOR = "#88CCDD";
+
     private int nodeWidth = 100, nodeHeight = 30;
     private String format = "[%f..%l]\nSize: %c";
     private String empty = "(empty)";
+    // the layout of the last exported tree; the tree is weakly referenced
+    private final Map<SplitTree, Layout> lastLayout = Collections.synchronizedMap(new WeakHashMap<>());
     
-    private static class GraphNode {
-        int x, y, w, h;
-        int id;
-        String color;
-        GraphNode l, r;
-        String text;
-
-        GraphNode(int x, int y, int w, int h, String text) {
-            super();
-            this.x = x;
-            this.y = y;
-            this.w = w;
-            this.h = h;
-            this.text = text;
-        }
+    /**
+     * Node coordinates computed in linear time: every subtree is placed
+     * according to the bounding box of its node positions, so the left
+     * subtree box and the right subtree box are centered under the parent
+     * with the fixed gap between them. Node ids are pre-order indices. The
+     * layout depends on the node width only, so it's reused when the same
+     * tree is exported again with different node format. It references no
+     * nodes, so it doesn't keep the tree alive.
+     */
+    private static final class Layout {
+        final int width;
+        final int[] size, x, y;
 
-        Element xmlNode(Document doc) {
-            Element node = section(doc, "node");
-            node.appendChild(attribute(doc, "id", "int", String.valueOf(id)));
-            node.appendChild(attribute(doc, "label", "String", text));
-
-            Element graphics = section(doc, "graphics");
-            graphics.appendChild(attribute(doc, "x", "double", String.valueOf(x)));
-            graphics.appendChild(attribute(doc, "y", "double", String.valueOf(y)));
-            graphics.appendChild(attribute(doc, "w", "double", String.valueOf(w)));
-            graphics.appendChild(attribute(doc, "h", "double", String.valueOf(h)));
-            graphics.appendChild(attribute(doc, "type", "String", "roundrectangle"));
-            graphics.appendChild(attribute(doc, "fill", "String", color));
-            graphics.appendChild(attribute(doc, "outline", "String", "#223344"));
-            node.appendChild(graphics);
-            return node;
+        Layout(SplitTree tree, int nodeWidth) {
+            this.width = nodeWidth;
+            List<SplitNode> nodes = new ArrayList<>();
+            for (Iterator<SplitNode> it = SplitTree.preOrder(tree.root()); it.hasNext();)
+                nodes.add(it.next());
+            int n = nodes.size();
+            size = new int[n];
+            x = new int[n];
+            y = new int[n];
+            // bounding box of the subtree node positions relative to the subtree root
+            int[] min = new int[n], max = new int[n];
+            for (int i = n - 1; i >= 0; i--) {
+                if (nodes.get(i).isLeaf()) {
+                    size[i] = 1;
+                    continue;
+                }
+                int l = left(i), r = l + size[l];
+                size[i] = 1 + size[l] + size[r];
+                int leftMin = min[l], leftMax = max[l] + nodeWidth;
+                int rightMin = min[r], rightMax = max[r] + nodeWidth;
+                int totalWidth = leftMax - leftMin + rightMax - rightMin + GAP;
+                // child offsets are temporarily stored as relative x
+                x[l] = (nodeWidth - totalWidth) / 2 - leftMin;
+                x[r] = (nodeWidth + totalWidth) / 2 - rightMax;
+                min[i] = Math.min(0, Math.min(x[l] + min[l], x[r] + min[r]));
+                max[i] = Math.max(0, Math.max(x[l] + max[l], x[r] + max[r]));
+            }
+            for (int i = 0; i < n; i++) {
+                if (!nodes.get(i).isLeaf()) {
+                    int l = left(i), r = right(i);
+                    x[l] += x[i];
+                    x[r] += x[i];
+                    y[l] = y[r] = y[i] + LEVEL_HEIGHT;
+                }
+            }
         }
 
-        List<Element> xmlEdges(Document doc) {
-            if (l == null)
-                return Collections.emptyList();
-
-            return Arrays.asList(edge(doc, l), edge(doc, r));
+        int nodeCount() {
+            return size.length;
         }
 
-        private Element edge(Document doc, GraphNode target) {
-            Element edge = section(doc, "edge");
-            edge.appendChild(attribute(doc, "source", "int", String.valueOf(id)));
-            edge.appendChild(attribute(doc, "target", "int", String.valueOf(target.id)));
+        boolean isLeaf(int i) {
+            return size[i] == 1;
+        }
 
-            Element graphics = section(doc, "graphics");
-            graphics.appendChild(attribute(doc, "fill", "String", "#000000"));
-            graphics.appendChild(attribute(doc, "targetArrow", "String", "standard"));
-            edge.appendChild(graphics);
+        int left(int i) {
+            return i + 1;
+        }
 
-            return edge;
+        int right(int i) {
+            return i + 1 + size[i + 1];
         }
     }
 
-    private List<GraphNode> nodes(SplitNode node) {
-        GraphNode n = new GraphNode(0, 0, nodeWidth, nodeHeight, formatNode(node));
-        if (node.isLeaf()) {
-            n.color = "#EEDDAA";
-            return Collections.singletonList(n);
+    private Layout layout(SplitTree tree) {
+        Layout layout = lastLayout.get(tree);
+        if (layout == null || layout.width != nodeWidth) {
+            layout = new Layout(tree, nodeWidth);
+            synchronized (lastLayout) {
+                lastLayout.clear();
+                lastLayout.put(tree, layout);
+            }
         }
-        n.color = "#88CCDD";
-        List<GraphNode> left = nodes(node.getLeft());
-        List<GraphNode> right = nodes(node.getRight());
-        n.l = left.get(0);
-        n.r = right.get(0);
-        left.forEach(gn -> gn.y += 70);
-        right.forEach(gn -> gn.y += 70);
-        IntSummaryStatistics leftStat = left.stream().collect(Collectors.summarizingInt(gn -> gn.x));
-        IntSummaryStatistics rightStat = right.stream().collect(Collectors.summarizingInt(gn -> gn.x));
-        int leftMin = leftStat.getMin();
-        int leftMax = leftStat.getMax() + n.w;
-        int rightMin = rightStat.getMin();
-        int rightMax = rightStat.getMax() + n.w;
-        int totalWidth = leftMax - leftMin + rightMax - rightMin + 30;
-        int shiftLeft = n.x + (n.w - totalWidth) / 2 - leftMin;
-        int shiftRight = n.x + (n.w + totalWidth) / 2 - rightMax;
-        left.forEach(gn -> gn.x += shiftLeft);
-        right.forEach(gn -> gn.x += shiftRight);
-        List<GraphNode> result = new ArrayList<>(left.size() + right.size() + 1);
-        result.add(n);
-        result.addAll(left);
-        result.addAll(right);
-        return result;
+        return layout;
     }
 
     private static Element section(Document doc, String name) {
@@ -141,10 +136,7 @@ public class XGMLFormatter {
     }
     
     private String formatNode(SplitNode node) {
-        String format = node.isEmpty() ? empty : this.format;
-        return format.replace("%f", String.valueOf(node.getFirst()))
-            .replace("%l", String.valueOf(node.getLast()))
-            .replace("%c", String.valueOf(node.getCount()));
+        return node.format(node.isEmpty() ? empty : format);
     }
     
     public Document asDocument(SplitTree tree) throws ParserConfigurationException {
@@ -161,23 +153,130 @@ public class XGMLFormatter {
         graph.appendChild(attribute(doc, "directed", "int", "1"));
         root.appendChild(graph);
 
-        List<GraphNode> nodes = nodes(tree.root());
-        for (int i = 0; i < nodes.size(); i++)
-            nodes.get(i).id = i;
+        Layout layout = layout(tree);
+        Iterator<SplitNode> nodes = SplitTree.preOrder(tree.root());
+        for (int i = 0; i < layout.nodeCount(); i++) {
+            SplitNode node = nodes.next();
+            Element n = section(doc, "node");
+            n.appendChild(attribute(doc, "id", "int", String.valueOf(i)));
+            n.appendChild(attribute(doc, "label", "String", formatNode(node)));
+            Element graphics = section(doc, "graphics");
+            graphics.appendChild(attribute(doc, "x", "double", String.valueOf(layout.x[i])));
+            graphics.appendChild(attribute(doc, "y", "double", String.valueOf(layout.y[i])));
+            graphics.appendChild(attribute(doc, "w", "double", String.valueOf(nodeWidth)));
+            graphics.appendChild(attribute(doc, "h", "double", String.valueOf(nodeHeight)));
+            graphics.appendChild(attribute(doc, "type", "String", "roundrectangle"));
+            graphics.appendChild(attribute(doc, "fill", "String", node.isLeaf() ? LEAF_COLOR : SPLIT_COLOR));
+            graphics.appendChild(attribute(doc, "outline", "String", "#223344"));
+            n.appendChild(graphics);
+            graph.appendChild(n);
+        }
+        for (int i = 0; i < layout.nodeCount(); i++) {
+            if (!layout.isLeaf(i)) {
+                graph.appendChild(edge(doc, i, layout.left(i)));
+                graph.appendChild(edge(doc, i, layout.right(i)));
+            }
+        }
+        return doc;
+    }
 
-        nodes.forEach(n -> graph.appendChild(n.xmlNode(doc)));
+    private static Element edge(Document doc, int source, int target) {
+        Element edge = section(doc, "edge");
+        edge.appendChild(attribute(doc, "source", "int", String.valueOf(source)));
+        edge.appendChild(attribute(doc, "target", "int", String.valueOf(target)));
 
-        nodes.forEach(n -> n.xmlEdges(doc).forEach(graph::appendChild));
-        return doc;
+        Element graphics = section(doc, "graphics");
+        graphics.appendChild(attribute(doc, "fill", "String", "#000000"));
+        graphics.appendChild(attribute(doc, "targetArrow", "String", "standard"));
+        edge.appendChild(graphics);
+        return edge;
     }
 
-    public void writeTo(SplitTree tree, OutputStream os) throws ParserConfigurationException, TransformerException {
-        DOMSource source = new DOMSource(asDocument(tree));
-        StreamResult result = new StreamResult(os);
-        Transformer transformer = TransformerFactory.newInstance().newTransformer();
-        transformer.setOutputProperty(javax.xml.transform.OutputKeys.MEDIA_TYPE, "text/xml");
-        transformer.setOutputProperty(javax.xml.transform.OutputKeys.INDENT, "yes");
-        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-        transformer.transform(source, result);
+    /**
+     * Writes the tree in XGML format to the supplied writer. The XML is
+     * written directly while traversing the tree without building the DOM.
+     * 
+     * @param tree the tree to write
+     * @param writer the writer to write to
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void writeTo(SplitTree tree, Writer writer) throws IOException {
+        Layout layout = layout(tree);
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<section name=\"xgml\">\n");
+        writeAttribute(writer, 1, "Creator", "String", "StreamTools");
+        writer.write("  <section name=\"graph\">\n");
+        writeAttribute(writer, 2, "hierarchic", "int", "1");
+        writeAttribute(writer, 2, "label", "String", "");
+        writeAttribute(writer, 2, "directed", "int", "1");
+        Iterator<SplitNode> nodes = SplitTree.preOrder(tree.root());
+        for (int i = 0; i < layout.nodeCount(); i++) {
+            SplitNode node = nodes.next();
+            writer.write("    <section name=\"node\">\n");
+            writeAttribute(writer, 3, "id", "int", String.valueOf(i));
+            writeAttribute(writer, 3, "label", "String", formatNode(node));
+            writer.write("      <section name=\"graphics\">\n");
+            writeAttribute(writer, 4, "x", "double", String.valueOf(layout.x[i]));
+            writeAttribute(writer, 4, "y", "double", String.valueOf(layout.y[i]));
+            writeAttribute(writer, 4, "w", "double", String.valueOf(nodeWidth));
+            writeAttribute(writer, 4, "h", "double", String.valueOf(nodeHeight));
+            writeAttribute(writer, 4, "type", "String", "roundrectangle");
+            writeAttribute(writer, 4, "fill", "String", node.isLeaf() ? LEAF_COLOR : SPLIT_COLOR);
+            writeAttribute(writer, 4, "outline", "String", "#223344");
+            writer.write("      </section>\n");
+            writer.write("    </section>\n");
+        }
+        for (int i = 0; i < layout.nodeCount(); i++) {
+            if (!layout.isLeaf(i)) {
+                writeEdge(writer, i, layout.left(i));
+                writeEdge(writer, i, layout.right(i));
+            }
+        }
+        writer.write("  </section>\n");
+        writer.write("</section>\n");
+    }
+
+    private static void writeEdge(Writer writer, int source, int target) throws IOException {
+        writer.write("    <section name=\"edge\">\n");
+        writeAttribute(writer, 3, "source", "int", String.valueOf(source));
+        writeAttribute(writer, 3, "target", "int", String.valueOf(target));
+        writer.write("      <section name=\"graphics\">\n");
+        writeAttribute(writer, 4, "fill", "String", "#000000");
+        writeAttribute(writer, 4, "targetArrow", "String", "standard");
+        writer.write("      </section>\n");
+        writer.write("    </section>\n");
+    }
+
+    private static void writeAttribute(Writer writer, int level, String key, String type, String value)
+            throws IOException {
+        for (int i = 0; i < level; i++)
+            writer.write("  ");
+        writer.write("<attribute key=\"");
+        writer.write(key);
+        writer.write("\" type=\"");
+        writer.write(type);
+        writer.write("\">");
+        escape(writer, value);
+        writer.write("</attribute>\n");
+    }
+
+    private static void escape(Writer writer, String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '<':
+                writer.write("&lt;");
+                break;
+            case '>':
+                writer.write("&gt;");
+                break;
+            case '&':
+                writer.write("&amp;");
+                break;
+            default:
+                writer.write(c);
+            }
+        }
     }
 }
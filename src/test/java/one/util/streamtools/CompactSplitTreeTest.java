@@ -0,0 +1,112 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class CompactSplitTreeTest {
+    @Test
+    public void testCollector() {
+        CompactSplitTree tree = IntStream.range(0, 100000).boxed().parallel().collect(CompactSplitTree.collector());
+        CompactSplitTree.Node root = tree.node(tree.root());
+        assertEquals(100000, root.getCount());
+        assertEquals("0", root.getFirst());
+        assertEquals("99999", root.getLast());
+        assertEquals(tree.size(), tree.leafIds().count() * 2 - 1);
+        long[] sum = new long[1];
+        List<String> firsts = new ArrayList<>();
+        tree.forEachLeaf(leaf -> {
+            sum[0] += leaf.getCount();
+            firsts.add(leaf.getFirst());
+        });
+        assertEquals(100000, sum[0]);
+        assertTrue(firsts.contains("0"));
+        tree.forEach(node -> {
+            if (!node.isLeaf()) {
+                assertTrue(node.getLeft() < node.id());
+                assertTrue(node.getRight() < node.id());
+            }
+            assertTrue(node.getEndNanos() >= node.getStartNanos());
+        });
+        SplitTree splitTree = tree.toSplitTree();
+        assertEquals(tree.size(), splitTree.nodes().count());
+        assertEquals(100000, splitTree.root().getCount());
+        assertEquals(tree.totalNanos(), splitTree.totalNanos());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        SplitTree tree = SplitTree.inspect(Stream.of("a", "b", "c", "d", "e").filter(x -> !x.equals("c")));
+        CompactSplitTree compact = CompactSplitTree.of(tree);
+        assertEquals(tree.nodes().count(), compact.size());
+        SplitTree restored = compact.toSplitTree();
+        assertEquals(tree.asLines(), restored.asLines());
+        assertEquals(tree.nodes().map(SplitNode::getThreadName).collect(Collectors.toList()), restored.nodes().map(
+            SplitNode::getThreadName).collect(Collectors.toList()));
+        assertEquals(tree.nodes().map(SplitNode::getStartNanos).collect(Collectors.toList()), restored.nodes().map(
+            SplitNode::getStartNanos).collect(Collectors.toList()));
+        assertEquals(tree.root().toString(), compact.node(compact.root()).toString());
+    }
+
+    @Test
+    public void testReuse() {
+        Collector<Object, ?, CompactSplitTree> collector = CompactSplitTree.collector();
+        assertEquals(2, Stream.of(1, 2).collect(collector).size() + Stream.of(3).collect(collector).size());
+        CompactSplitTree big = IntStream.range(0, 10000).boxed().parallel().collect(collector);
+        assertEquals(10000, big.node(big.root()).getCount());
+        assertEquals(big.size(), big.leafIds().count() * 2 - 1);
+
+        Map<Integer, CompactSplitTree> groups = IntStream.range(0, 10000).boxed().parallel().collect(Collectors
+                .groupingBy(x -> x % 3, Collectors.mapping(x -> x, collector)));
+        for (int key = 0; key < 3; key++) {
+            CompactSplitTree tree = groups.get(key);
+            assertEquals(key == 0 ? 3334 : 3333, tree.node(tree.root()).getCount());
+            assertEquals(String.valueOf(key), tree.node(tree.root()).getFirst());
+            tree.forEach(node -> {
+                if (!node.isLeaf()) {
+                    assertTrue(node.getLeft() < node.id());
+                    assertTrue(node.getRight() < node.id());
+                    assertEquals(node.getCount(), tree.node(node.getLeft()).getCount() + tree.node(node.getRight())
+                            .getCount());
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testValueKinds() {
+        List<Object> values = Arrays.asList(1, -2L, (short) 3, (byte) 4, 1.5, 2.5f, 'x', "str", null,
+            true, Double.NaN, Long.MIN_VALUE);
+        for (Object first : values) {
+            for (Object last : values) {
+                CompactSplitTree tree = Stream.of(first, "mid", last).collect(CompactSplitTree.collector());
+                CompactSplitTree.Node root = tree.node(tree.root());
+                assertEquals(String.valueOf(first), root.getFirst());
+                assertEquals(String.valueOf(last), root.getLast());
+            }
+        }
+        CompactSplitTree tree = IntStream.range(0, 10000).mapToObj(x -> x % 2 == 0 ? (Object) (x * 0.5) : "s" + x)
+                .parallel().collect(CompactSplitTree.collector(SplitClock.fake(1), 64));
+        SplitTree expected = IntStream.range(0, 10000).mapToObj(x -> x % 2 == 0 ? (Object) (x * 0.5) : "s" + x)
+                .collect(SplitTree.collector());
+        assertEquals("0.0", tree.node(tree.root()).getFirst());
+        assertEquals("s9999", tree.node(tree.root()).getLast());
+        assertEquals(expected.root().getLast(), tree.node(tree.root()).getLast());
+        tree.forEach(node -> {
+            if (!node.isLeaf()) {
+                assertEquals(tree.node(node.getLeft()).getFirst(), node.getFirst());
+                assertEquals(tree.node(node.getRight()).getLast() == null ? tree.node(node.getRight()).getFirst()
+                        : tree.node(node.getRight()).getLast(), node.getLast());
+            }
+        });
+    }
+}
@@ -0,0 +1,44 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class ConcurrentProfileTest {
+    @Test
+    public void testConcurrent() {
+        ConcurrentProfile<ConcurrentMap<Integer, List<Integer>>> profile = IntStream.range(0, 10000).boxed()
+                .parallel().collect(SplitTree.profilingConcurrent(Collectors.groupingByConcurrent(x -> x % 10)));
+        assertEquals(10, profile.result().size());
+        assertEquals(1000, profile.result().get(7).size());
+        assertEquals(10000, profile.threads().stream().mapToLong(ConcurrentProfile.ThreadProfile::getCount).sum());
+        assertTrue(profile.contention() >= 0 && profile.contention() < 1);
+        assertTrue(profile.accumulatorNanos() > 0);
+        List<String> lines = profile.asLines(40);
+        assertEquals(profile.threads().size(), lines.size());
+        for (String line : lines)
+            assertTrue(line.matches(".* : [ .\\-=#]{1,41}"));
+        assertFalse(profile.toString().isEmpty());
+    }
+
+    @Test
+    public void testSequential() {
+        ConcurrentProfile<ConcurrentMap<Boolean, List<Integer>>> profile = IntStream.range(0, 100).boxed().collect(
+            SplitTree.profilingConcurrent(Collectors.groupingByConcurrent(x -> x % 2 == 0)));
+        assertEquals(50, profile.result().get(true).size());
+        assertEquals(1, profile.threads().size());
+        assertEquals(Thread.currentThread().getName(), profile.threads().get(0).getThreadName());
+        assertEquals(100, profile.threads().get(0).getCount());
+        assertEquals(0.0, profile.contention(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonConcurrent() {
+        SplitTree.profilingConcurrent(Collectors.toList());
+    }
+}
@@ -0,0 +1,207 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class LiveSplitMonitorTest {
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPartialTree() {
+        FakeSplitClock clock = new FakeSplitClock(0, 0);
+        LiveSplitMonitor monitor = new LiveSplitMonitor(clock, 1024).reportEvery(4).expectedSize(20);
+        Collector<Object, Object, SplitTree> collector = (Collector<Object, Object, SplitTree>) monitor.collector();
+        Supplier<Object> supplier = collector.supplier();
+        BiConsumer<Object, Object> accumulator = collector.accumulator();
+        BinaryOperator<Object> combiner = collector.combiner();
+
+        assertTrue(monitor.snapshot().isEmpty());
+        assertEquals(-1, monitor.getEstimatedRemainingNanos());
+        Object left = supplier.get(), right = supplier.get();
+        for (int i = 0; i < 6; i++)
+            accumulator.accept(left, i);
+        clock.advance(1000);
+        for (int i = 0; i < 2; i++)
+            accumulator.accept(right, i);
+        // 5 elements reported by the left leaf (1 + 4), 1 by the right one
+        assertEquals(6, monitor.getProcessedCount());
+        List<SplitTree> trees = monitor.snapshot();
+        assertEquals(2, trees.size());
+        assertEquals("(5)", trees.get(0).toString());
+        assertEquals("(1)", trees.get(1).toString());
+        assertEquals(2, monitor.getLeafCount());
+        assertEquals(1, monitor.getActiveWorkers());
+        // 6 elements per 1000 ns, 14 more elements are expected
+        assertEquals(14 * 1000 / 6, monitor.getEstimatedRemainingNanos());
+        assertEquals(4, monitor.getProgressView().size());
+        assertTrue(monitor.getProgressView().get(0).startsWith("Processed: 6 of 20 (30.0%)"));
+
+        clock.advance(LiveSplitMonitor.ACTIVE_NANOS * 2);
+        assertEquals(0, monitor.getActiveWorkers());
+        assertTrue(monitor.toString().contains("idle for 200 ms"));
+
+        Object root = combiner.apply(left, right);
+        assertEquals(8, monitor.getProcessedCount());
+        trees = monitor.snapshot();
+        assertEquals(1, trees.size());
+        SplitTree tree = trees.get(0);
+        assertEquals(3, tree.nodes().count());
+        assertEquals(8, tree.root().getCount());
+        assertEquals(6, tree.root().getLeft().getCount());
+        assertEquals(2, tree.root().getRight().getCount());
+        assertEquals(Thread.currentThread().getName(), tree.root().getThreadName());
+
+        SplitTree result = collector.finisher().apply(root);
+        assertEquals(8, result.root().getCount());
+        assertEquals("[0..1]", result.root().getRight().toString());
+        assertEquals(3, monitor.snapshot().get(0).nodes().count());
+        assertEquals(0, monitor.getDroppedEvents());
+        // the finished tree is returned only once
+        assertTrue(monitor.snapshot().isEmpty());
+        assertEquals(0, monitor.getLeafCount());
+
+        monitor.reset();
+        assertTrue(monitor.snapshot().isEmpty());
+        assertEquals(0, monitor.getProcessedCount());
+    }
+
+    @Test
+    public void testParallel() {
+        LiveSplitMonitor monitor = new LiveSplitMonitor().reportEvery(16);
+        SplitTree tree = IntStream.range(0, 100000).parallel().boxed().collect(monitor.collector());
+        assertEquals(100000, monitor.getProcessedCount());
+        List<SplitTree> trees = monitor.snapshot();
+        assertEquals(1, trees.size());
+        SplitTree snapshot = trees.get(0);
+        assertEquals(tree.nodes().count(), snapshot.nodes().count());
+        assertEquals(100000, snapshot.root().getCount());
+        assertArrayEquals(tree.leafs().mapToLong(SplitNode::getCount).toArray(), snapshot.leafs().mapToLong(
+            SplitNode::getCount).toArray());
+        assertEquals(0, monitor.getActiveWorkers());
+    }
+
+    @Test
+    public void testOverflow() {
+        LiveSplitMonitor monitor = new LiveSplitMonitor(16).reportEvery(1);
+        IntStream.range(0, 1000).boxed().collect(monitor.collector());
+        assertEquals(1000, monitor.getProcessedCount());
+        assertEquals(1002 - 16, monitor.getDroppedEvents());
+        List<SplitTree> trees = monitor.snapshot();
+        assertEquals(1, trees.size());
+        assertEquals(1000, trees.get(0).root().getCount());
+    }
+
+    @Test
+    public void testFinishedTreesLimit() {
+        LiveSplitMonitor monitor = new LiveSplitMonitor();
+        for (int i = 0; i < LiveSplitMonitor.MAX_FINISHED_TREES + 4; i++)
+            IntStream.range(0, i + 1).boxed().collect(monitor.collector());
+        assertEquals(LiveSplitMonitor.MAX_FINISHED_TREES, monitor.getLeafCount());
+        List<SplitTree> trees = monitor.snapshot();
+        assertEquals(LiveSplitMonitor.MAX_FINISHED_TREES, trees.size());
+        // the oldest trees are evicted first
+        assertEquals(5, trees.get(0).root().getCount());
+        assertTrue(monitor.snapshot().isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMaxNodes() {
+        LiveSplitMonitor monitor = new LiveSplitMonitor().maxNodes(50);
+        Collector<Object, Object, SplitTree> collector = (Collector<Object, Object, SplitTree>) (Collector<?, ?, ?>)
+                monitor.collector();
+        Object first = collector.supplier().get(), second = collector.supplier().get();
+        collector.accumulator().accept(first, 1);
+        collector.accumulator().accept(second, 2);
+        // the streams which never finish
+        for (int i = 0; i < 200; i++) {
+            collector.accumulator().accept(collector.supplier().get(), i);
+            assertTrue(monitor.getLeafCount() <= 50);
+        }
+        assertEquals(50, monitor.getLeafCount());
+        // the children are forgotten already
+        Object parent = collector.combiner().apply(first, second);
+        List<SplitTree> trees = monitor.snapshot();
+        assertEquals(50, trees.size());
+        SplitTree last = trees.get(trees.size() - 1);
+        assertTrue(last.root().isLeaf());
+        assertEquals(2, last.root().getCount());
+        assertEquals(2, collector.finisher().apply(parent).root().getCount());
+    }
+
+    @Test
+    public void testRingConsistency() throws InterruptedException {
+        SplitEventRing ring = new SplitEventRing(2);
+        int threads = 8, events = 50000;
+        AtomicLong ids = new AtomicLong();
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean done = new AtomicBoolean();
+        Thread consumer = new Thread(() -> {
+            long[] count = new long[1];
+            while (!done.get() || count[0] == 0) {
+                ring.drain((kind, node, left, right, cnt, threadId, workerIndex, nanos) -> {
+                    count[0]++;
+                    if (kind != node % 4 + 1 || left != node * 3 || right != node * 5 || cnt != node * 7
+                        || threadId != node * 11 || workerIndex != (int) node || nanos != node * 13)
+                        errors.add("Torn event: " + node);
+                });
+            }
+        });
+        consumer.start();
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < events; i++) {
+                    long node = ids.incrementAndGet();
+                    ring.publish((int) (node % 4 + 1), node, node * 3, node * 5, node * 7, node * 11, (int) node,
+                        node * 13);
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers)
+            producer.join();
+        done.set(true);
+        consumer.join();
+        assertEquals(Collections.emptyList(), errors);
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        LiveSplitMonitor monitor = new LiveSplitMonitor().expectedSize(100);
+        IntStream.range(0, 100).boxed().collect(monitor.collector());
+        ObjectName name = monitor.register("test");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(100L, server.getAttribute(name, "ProcessedCount"));
+            assertEquals(100L, server.getAttribute(name, "ExpectedSize"));
+            assertEquals(1, server.getAttribute(name, "LeafCount"));
+            String[] view = (String[]) server.getAttribute(name, "ProgressView");
+            assertTrue(view[0].startsWith("Processed: 100 of 100 (100.0%)"));
+            try {
+                monitor.register("test");
+                fail("Expected IllegalStateException");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            monitor.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
@@ -0,0 +1,44 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class ParallelAdvisorTest {
+    @Test
+    public void testEvaluate() {
+        ParallelAdvice advice = new ParallelAdvisor().warmup(1).iterations(3).evaluate(n -> IntStream.range(0, n)
+                .map(x -> x * 2), 10000, 10, 1000);
+        assertEquals(Arrays.asList(10, 1000, 10000), advice.entries().stream().map(ParallelAdvice.Entry::getSize)
+                .collect(Collectors.toList()));
+        for (ParallelAdvice.Entry entry : advice.entries()) {
+            assertEquals(entry.getSize(), entry.getTree().root().getCount());
+            assertTrue(entry.getSequentialNanos() > 0);
+            assertTrue(entry.getParallelNanos() > 0);
+            assertTrue(entry.getCombineOverheadNanos() >= 0);
+            assertTrue(entry.getSplitOverheadNanos() >= 0);
+            assertEquals(entry.getSize(), entry.getRecordedTree().root().getCount());
+            assertTrue(entry.getRecordedTree().root() instanceof RecordedSplitNode);
+        }
+        int breakEven = advice.breakEvenSize();
+        assertEquals(breakEven >= 0, advice.breakEvenTree() != null);
+        assertEquals(breakEven >= 0, advice.recommendParallel(Integer.MAX_VALUE));
+        assertFalse(advice.recommendParallel(breakEven - 1));
+        assertTrue(advice.toString().contains("split, us"));
+    }
+
+    @Test
+    public void testObjectStream() {
+        ParallelAdvice advice = new ParallelAdvisor().warmup(0).iterations(1).evaluate(n -> IntStream.range(0, n)
+                .boxed(), 100);
+        assertEquals(100, advice.entries().get(0).getTree().root().getCount());
+        SplitTree recorded = advice.entries().get(0).getRecordedTree();
+        long splitNanos = recorded.nodes().filter(node -> !node.isLeaf()).mapToLong(
+            node -> ((RecordedSplitNode) node).getSplitNanos()).sum();
+        assertEquals(splitNanos, advice.entries().get(0).getSplitOverheadNanos());
+    }
+}
@@ -0,0 +1,49 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class ProfiledSplitNodeTest {
+    @Test
+    public void testProfiling() {
+        ProfiledResult<Map<Integer, List<Integer>>> result = IntStream.range(0, 10000).boxed().parallel().collect(
+            SplitTree.profiling(Collectors.groupingBy(x -> x % 10)));
+        assertEquals(10, result.result().size());
+        assertEquals(1000, result.result().get(3).size());
+        SplitTree tree = result.tree();
+        assertEquals(10000, tree.root().getCount());
+        assertTrue(tree.nodes().allMatch(ProfiledSplitNode.class::isInstance));
+        for (SplitNode node : tree.nodes().collect(Collectors.toList())) {
+            ProfiledSplitNode p = (ProfiledSplitNode) node;
+            if (node.isLeaf()) {
+                assertEquals(0, p.getCombinerNanos());
+                if (node.getCount() >= 10)
+                    assertEquals(10, p.getContainerSize());
+            } else {
+                assertEquals(0, p.getAccumulatorNanos());
+                assertEquals(0, p.getSupplierNanos());
+            }
+        }
+        assertEquals(10, ((ProfiledSplitNode) tree.root()).getContainerSize());
+        assertTrue(result.accumulatorNanos() > 0);
+        assertTrue(result.finisherNanos() >= 0);
+    }
+
+    @Test
+    public void testSequential() {
+        ProfiledResult<String> result = Stream.of("a", "b", "c").collect(SplitTree.profiling(Collectors.joining(",")));
+        assertEquals("a,b,c", result.result());
+        ProfiledSplitNode root = (ProfiledSplitNode) result.tree().root();
+        assertTrue(root.isLeaf());
+        assertEquals(3, root.getCount());
+        assertEquals(-1, root.getContainerSize());
+        assertEquals("[a..c]", root.toString());
+    }
+}
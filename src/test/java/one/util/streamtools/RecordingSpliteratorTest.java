@@ -0,0 +1,76 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+
+public class RecordingSpliteratorTest {
+    @Test
+    public void testSized() {
+        List<Integer> input = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+        RecordingSpliterator<Integer> spliterator = new RecordingSpliterator<>(input.spliterator());
+        List<Integer> result = StreamSupport.stream(spliterator, true).collect(Collectors.toList());
+        assertEquals(input, result);
+        assertTrue(spliterator.isComplete());
+        SplitTree tree = spliterator.tree();
+        assertTrue(tree.leafs().count() > 1);
+        assertEquals(1000, tree.root().getCount());
+        assertTrue(tree.nodes().map(RecordedSplitNode.class::cast).allMatch(RecordedSplitNode::isEstimateExact));
+        assertTrue(tree.nodes().map(RecordedSplitNode.class::cast).allMatch(
+            node -> node.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED)));
+        assertTrue(tree.nodes().map(RecordedSplitNode.class::cast).allMatch(
+            node -> node.isLeaf() == (node.getSplitNanos() == 0)));
+        assertEquals("ORDERED|SIZED|SUBSIZED", ((RecordedSplitNode) tree.root()).getCharacteristicsString());
+    }
+
+    @Test
+    public void testUnsized() {
+        Spliterator<Integer> source = Spliterators.spliteratorUnknownSize(IntStream.range(0, 5000).iterator(),
+            Spliterator.ORDERED);
+        List<SplitTree> trees = new ArrayList<>();
+        RecordingSpliterator<Integer> spliterator = new RecordingSpliterator<>(source, trees::add);
+        assertEquals(5000L, (long) StreamSupport.stream(spliterator, true).collect(Collectors.counting()));
+        assertEquals(1, trees.size());
+        SplitTree tree = trees.get(0);
+        RecordedSplitNode root = (RecordedSplitNode) tree.root();
+        assertEquals(Long.MAX_VALUE, root.getEstimatedSize());
+        assertFalse(root.isEstimateExact());
+        assertFalse(root.hasCharacteristics(Spliterator.SIZED));
+        // array-based prefixes are sized, while the remaining part is not
+        assertTrue(((RecordedSplitNode) root.getLeft()).hasCharacteristics(Spliterator.SIZED));
+    }
+
+    @Test
+    public void testSplitAfterTraversal() {
+        RecordingSpliterator<Integer> spliterator = new RecordingSpliterator<>(Arrays.asList(1, 2, 3, 4, 5, 6)
+                .spliterator());
+        assertTrue(spliterator.tryAdvance(x -> assertEquals(1, (int) x)));
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        assertFalse(spliterator.isComplete());
+        prefix.forEachRemaining(x -> {});
+        spliterator.forEachRemaining(x -> {});
+        assertTrue(spliterator.isComplete());
+        SplitTree tree = spliterator.tree();
+        assertEquals(6, tree.root().getCount());
+        assertEquals(Arrays.asList("[1]", "[2..3]", "[4..6]"), tree.leafs().map(SplitNode::toString).collect(
+            Collectors.toList()));
+    }
+
+    @Test
+    public void testFailedSplits() {
+        RecordingSpliterator<Integer> spliterator = new RecordingSpliterator<>(Arrays.asList(1).spliterator());
+        assertNull(spliterator.trySplit());
+        assertNull(spliterator.trySplit());
+        spliterator.forEachRemaining(x -> {});
+        assertEquals(2, ((RecordedSplitNode) spliterator.tree().root()).getFailedSplits());
+    }
+}
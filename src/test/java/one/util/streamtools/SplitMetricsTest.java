@@ -0,0 +1,130 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class SplitMetricsTest {
+    @Test
+    public void testCollector() {
+        SplitMetrics metrics = new SplitMetrics();
+        for (int i = 0; i < 10; i++) {
+            List<Integer> list = IntStream.range(0, 10000).boxed().parallel().collect(
+                SplitMetrics.collector(metrics, Collectors.toList()));
+            assertEquals(10000, list.size());
+            assertEquals(9999, (int) list.get(9999));
+        }
+        assertEquals(10, metrics.getStreams());
+        assertEquals(100000, metrics.getElements());
+        assertEquals(metrics.getLeafs() - 10, metrics.getCombines());
+        assertEquals(100000, metrics.leafSizes().getSum());
+        assertEquals(metrics.getLeafs(), metrics.leafNanos().getCount());
+        long perWorker = metrics.getWorkerLeafs(-1);
+        for (int i = 0; i < SplitMetrics.MAX_WORKERS; i++)
+            perWorker += metrics.getWorkerLeafs(i);
+        assertEquals(metrics.getLeafs(), perWorker);
+        assertFalse(metrics.toString().isEmpty());
+        metrics.reset();
+        assertEquals(0, metrics.getStreams());
+        assertEquals(0, metrics.leafSizes().getCount());
+    }
+
+    @Test
+    public void testCompleteNanos() {
+        AtomicLong maxLeafNanos = new AtomicLong(), completeNanos = new AtomicLong();
+        SplitMetricsListener listener = new SplitMetricsListener() {
+            @Override
+            public void onLeaf(long s, long nanos, int workerIndex) {
+                maxLeafNanos.accumulateAndGet(nanos, Math::max);
+            }
+
+            @Override
+            public void onComplete(long s, long nanos) {
+                completeNanos.set(nanos);
+            }
+        };
+        List<Integer> list = IntStream.range(0, 10000).boxed().parallel().peek(x -> {
+            if (x == 0)
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }).collect(SplitMetrics.collector(listener, Collectors.toList()));
+        assertEquals(10000, list.size());
+        assertTrue(maxLeafNanos.get() >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(completeNanos.get() + " < " + maxLeafNanos.get(), completeNanos.get() >= maxLeafNanos.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testLeafNanosExcludeWaiting() {
+        List<Long> leafNanos = new ArrayList<>();
+        SplitMetricsListener listener = new SplitMetricsListener() {
+            @Override
+            public void onLeaf(long s, long nanos, int workerIndex) {
+                leafNanos.add(nanos);
+            }
+        };
+        Collector<Integer, Object, List<Integer>> collector = (Collector<Integer, Object, List<Integer>>) SplitMetrics
+                .collector(listener, Collectors.<Integer> toList());
+        Object left = collector.supplier().get();
+        collector.accumulator().accept(left, 1);
+        // the left leaf is done and waits for its sibling
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+        Object right = collector.supplier().get();
+        collector.accumulator().accept(right, 2);
+        assertEquals(Arrays.asList(1, 2), collector.finisher().apply(collector.combiner().apply(left, right)));
+        assertEquals(2, leafNanos.size());
+        assertTrue(leafNanos.toString(), leafNanos.get(0) < TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void testSequential() {
+        AtomicLong leafs = new AtomicLong(), combines = new AtomicLong(), size = new AtomicLong();
+        SplitMetricsListener listener = new SplitMetricsListener() {
+            @Override
+            public void onLeaf(long s, long nanos, int workerIndex) {
+                leafs.incrementAndGet();
+                assertEquals(-1, workerIndex);
+            }
+
+            @Override
+            public void onCombine(long s, long nanos, int workerIndex) {
+                combines.incrementAndGet();
+            }
+
+            @Override
+            public void onComplete(long s, long nanos) {
+                size.set(s);
+            }
+        };
+        assertEquals("abc", Stream.of("a", "b", "c").collect(SplitMetrics.collector(listener, Collectors.joining())));
+        assertEquals(1, leafs.get());
+        assertEquals(0, combines.get());
+        assertEquals(3, size.get());
+    }
+
+    @Test
+    public void testHistogram() {
+        SplitMetrics.Histogram histogram = new SplitMetrics.Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        histogram.record(0);
+        for (int i = 0; i < 8; i++)
+            histogram.record(5);
+        histogram.record(1000);
+        assertEquals(10, histogram.getCount());
+        assertEquals(1, histogram.getBucketCount(0));
+        assertEquals(8, histogram.getBucketCount(3));
+        assertEquals(7, histogram.getPercentile(50));
+        assertEquals(1023, histogram.getPercentile(99));
+        assertEquals(1040, histogram.getSum());
+    }
+}
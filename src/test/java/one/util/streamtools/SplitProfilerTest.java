@@ -0,0 +1,61 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class SplitProfilerTest {
+    @Test
+    public void testProfile() {
+        SplitProfile profile = new SplitProfiler().warmup(2).iterations(10).profile(
+            () -> IntStream.range(0, 10000).map(x -> x * 2));
+        assertEquals(10, profile.trees().size());
+        assertTrue(profile.shapeStability() > 0 && profile.shapeStability() <= 1);
+        SplitProfile.Position root = profile.position("");
+        assertEquals(10, root.getOccurrences());
+        assertTrue(root.getMedianNanos() <= root.getP90Nanos());
+        assertTrue(root.getP90Nanos() <= root.getP99Nanos());
+        assertEquals(profile.representative().nodes().count(), profile.positions().size());
+        assertEquals(profile.representative().leafs().count(), profile.positions().stream().filter(
+            SplitProfile.Position::isLeaf).count());
+        assertTrue(profile.totalNanos(50) <= profile.totalNanos(99));
+        assertFalse(profile.asLines().isEmpty());
+    }
+
+    @Test
+    public void testAlignment() {
+        List<SplitTree> trees = Arrays.asList(pair(), pair(), single(), pair());
+        SplitProfile profile = new SplitProfile(trees);
+        assertEquals(0.75, profile.shapeStability(), 0.0);
+        assertSame(trees.get(0), profile.representative());
+        assertEquals(Arrays.asList("", "L", "R"), profile.positions().stream().map(SplitProfile.Position::getPath)
+                .collect(Collectors.toList()));
+        SplitProfile.Position left = profile.position("L");
+        assertEquals(3, left.getOccurrences());
+        assertEquals(3, left.getLeafOccurrences());
+        assertTrue(left.getMedianNanos() >= 0);
+        assertEquals(4, profile.position("").getOccurrences());
+        assertEquals(1, profile.position("").getLeafOccurrences());
+        assertNull(profile.position("LL"));
+    }
+
+    private static SplitTree pair() {
+        SplitNode left = new SplitNode();
+        left.accept(1);
+        SplitNode right = new SplitNode();
+        right.accept(2);
+        return new SplitTree(left.combine(right));
+    }
+
+    private static SplitTree single() {
+        SplitNode node = new SplitNode();
+        node.accept(1);
+        node.accept(2);
+        return new SplitTree(node);
+    }
+}
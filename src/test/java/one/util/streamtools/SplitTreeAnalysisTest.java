@@ -0,0 +1,46 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.junit.Test;
+
+public class SplitTreeAnalysisTest {
+    @Test
+    public void testEmulated() {
+        SplitNode left = new SplitNode();
+        left.accept(1);
+        left.accept(2);
+        left.accept(3);
+        SplitNode right = new SplitNode();
+        right.accept(4);
+        right.accept(5);
+        right.accept(6);
+        SplitNode combo = left.combine(right);
+        SplitNode root = combo.combine(new SplitNode());
+        SplitTreeAnalysis analysis = new SplitTree(root).analyze();
+        assertEquals(3, analysis.leafSizes().getCount());
+        assertEquals(1.5, analysis.imbalance(), 1e-9);
+        assertEquals(Math.sqrt(2) / 2, analysis.leafSizeVariation(), 1e-9);
+        assertArrayEquals(new long[] { 0, 1, 2 }, analysis.depthHistogram());
+        assertEquals(2, analysis.maxDepth());
+        assertSame(root, analysis.criticalPath().get(0));
+        assertTrue(analysis.criticalPath().get(analysis.criticalPath().size() - 1).isLeaf());
+        assertEquals(1, analysis.busyNanos().size());
+        assertEquals(analysis.leafNanos() + analysis.combineNanos(), (long) analysis.busyNanos().get(
+            Thread.currentThread().getName()));
+        assertTrue(analysis.toString().startsWith("Leafs: 3, sizes: 0..3 (avg 2.0), imbalance: 1.50"));
+    }
+
+    @Test
+    public void testBalanced() {
+        SplitTreeAnalysis analysis = SplitTree.inspect(IntStream.range(0, 1 << 16)).analyze();
+        assertTrue(analysis.imbalance() < 1.5);
+        assertEquals(1 << 16, analysis.leafSizes().getSum());
+        assertTrue(analysis.speedup() > 0);
+        assertEquals(analysis.busyNanos().keySet(), analysis.idleNanos().keySet());
+        assertEquals(analysis.leafSizes().getCount(), LongStream.of(analysis.depthHistogram()).sum());
+    }
+}
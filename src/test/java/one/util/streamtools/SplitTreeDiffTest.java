@@ -0,0 +1,82 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class SplitTreeDiffTest {
+    @Test
+    public void testSame() {
+        SplitTree tree = tree(leaf(1, 5), leaf(6, 10));
+        SplitTreeDiff diff = SplitTree.diff(tree, tree(leaf(1, 5), leaf(6, 10)));
+        assertTrue(diff.isSameShape());
+        assertEquals(3, diff.entries().size());
+        assertTrue(diff.changes().isEmpty());
+        assertEquals(tree.asLines(), diff.asLines());
+    }
+
+    @Test
+    public void testChanges() {
+        SplitTree before = tree(leaf(1, 5), tree(leaf(6, 8), leaf(9, 10)).root());
+        SplitTree after = tree(tree(leaf(1, 2), leaf(3, 5)).root(), leaf(6, 10));
+        SplitTreeDiff diff = SplitTree.diff(before, after);
+        assertFalse(diff.isSameShape());
+        assertEquals(Arrays.asList("", "L", "LL", "LR", "R", "RL", "RR"), diff.entries().stream().map(
+            SplitTreeDiff.Entry::getPath).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(SplitTreeDiff.Change.SAME, SplitTreeDiff.Change.SPLIT_ADDED,
+            SplitTreeDiff.Change.ADDED, SplitTreeDiff.Change.ADDED, SplitTreeDiff.Change.SPLIT_REMOVED,
+            SplitTreeDiff.Change.REMOVED, SplitTreeDiff.Change.REMOVED), diff.entries().stream().map(
+            SplitTreeDiff.Entry::getChange).collect(Collectors.toList()));
+        assertNull(diff.entries().get(5).getAfter());
+        assertNull(diff.entries().get(2).getBefore());
+        assertEquals(0, diff.entries().get(2).getDurationDeltaNanos());
+        List<String> lines = diff.asLines();
+        assertEquals("[1..10]", lines.get(0).trim());
+        assertEquals("+[1..5] -[6..10]", lines.get(3).trim().replaceAll(" +", " "));
+        assertEquals("+[1..2] +[3..5] -[6..8] -[9..10]", lines.get(6).trim().replaceAll(" +", " "));
+        assertTrue(diff.toString().startsWith("RESIZED: 0, SPLIT_ADDED: 1, SPLIT_REMOVED: 1, ADDED: 2, REMOVED: 2"));
+    }
+
+    @Test
+    public void testResized() {
+        SplitTreeDiff diff = SplitTree.diff(tree(leaf(1, 5), leaf(6, 10)), tree(leaf(1, 6), leaf(7, 10)));
+        assertEquals(2, diff.changes(SplitTreeDiff.Change.RESIZED).size());
+        assertEquals("[1..5]=>[1..6] [6..10]=>[7..10]", diff.asLines().get(3).trim().replaceAll(" +", " "));
+    }
+
+    @Test
+    public void testMoved() {
+        SplitTree before = tree(tree(leaf(1, 3), leaf(4, 5)).root(), leaf(6, 10));
+        SplitTree after = tree(leaf(1, 3), tree(leaf(4, 5), leaf(6, 10)).root());
+        SplitTreeDiff diff = SplitTree.diff(before, after);
+        assertEquals(Arrays.asList(SplitTreeDiff.Change.SAME, SplitTreeDiff.Change.SPLIT_REMOVED,
+            SplitTreeDiff.Change.MOVED, SplitTreeDiff.Change.MOVED, SplitTreeDiff.Change.SPLIT_ADDED,
+            SplitTreeDiff.Change.MOVED, SplitTreeDiff.Change.MOVED), diff.entries().stream().map(
+            SplitTreeDiff.Entry::getChange).collect(Collectors.toList()));
+        SplitTreeDiff.Entry moved = diff.entries().get(3);
+        assertEquals("LR", moved.getPath());
+        assertEquals("RL", moved.getMovedTo().getPath());
+        assertSame(before.root().getLeft().getRight(), moved.getBefore());
+        assertSame(after.root().getRight().getLeft(), moved.getAfter());
+        assertEquals("L", diff.entries().get(2).getMovedTo().getPath());
+        assertEquals("R", diff.entries().get(6).getMovedTo().getPath());
+        assertEquals("~[1..3] ~[4..5] ~[4..5] ~[6..10]", diff.asLines().get(6).trim().replaceAll(" +", " "));
+        assertTrue(diff.toString().endsWith(", MOVED: 4" + System.lineSeparator() + String.join(System
+                .lineSeparator(), diff.asLines()) + System.lineSeparator()));
+    }
+
+    private static SplitNode leaf(int from, int to) {
+        SplitNode node = new SplitNode();
+        for (int i = from; i <= to; i++)
+            node.accept(i);
+        return node;
+    }
+
+    private static SplitTree tree(SplitNode left, SplitNode right) {
+        return new SplitTree(left.combine(right));
+    }
+}
@@ -0,0 +1,64 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class SplitTreeExporterTest {
+    private static SplitTree createTree() {
+        SplitNode left = new SplitNode();
+        left.accept("a\"b");
+        left.accept(2);
+        SplitNode right = new SplitNode();
+        return new SplitTree(left.combine(right));
+    }
+
+    @Test
+    public void testDot() throws Exception {
+        StringWriter writer = new StringWriter();
+        new DotFormatter().writeTo(createTree(), writer);
+        assertEquals("digraph SplitTree {\n"
+            + "  node [shape=box, style=\"rounded,filled\", color=\"#223344\"];\n"
+            + "  n0 [label=\"[a\\\"b..2]\\nSize: 2\", fillcolor=\"#88CCDD\"];\n"
+            + "  n1 [label=\"[a\\\"b..2]\\nSize: 2\", fillcolor=\"#EEDDAA\"];\n"
+            + "  n0 -> n1;\n"
+            + "  n2 [label=\"(empty)\", fillcolor=\"#EEDDAA\"];\n"
+            + "  n0 -> n2;\n"
+            + "}\n", writer.toString());
+        
+        writer = new StringWriter();
+        new DotFormatter().nodeFormat("%c", "-").writeTo(createTree(), writer);
+        assertTrue(writer.toString().contains("n2 [label=\"-\""));
+    }
+
+    @Test
+    public void testTraceEvents() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new TraceEventFormatter().processName("test").writeTo(createTree(), os);
+        String json = new String(os.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[\n"
+            + "{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"args\":{\"name\":\"test\"}},\n"
+            + "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":1,\"args\":{\"name\":\""));
+        assertTrue(json.contains("{\"name\":\"[a\\\"b..2]\",\"cat\":\"combine\",\"ph\":\"X\",\"pid\":1,\"tid\":1,"));
+        assertTrue(json.contains("{\"name\":\"(empty)\",\"cat\":\"leaf\",\"ph\":\"X\""));
+        assertEquals(3, json.split("\"ph\":\"X\"").length - 1);
+        assertTrue(json.endsWith("\n]}\n"));
+    }
+
+    @Test
+    public void testParallelTrace() throws Exception {
+        SplitTree tree = SplitTree.inspect(IntStream.range(0, 10000));
+        StringWriter writer = new StringWriter();
+        new TraceEventFormatter().writeTo(tree, writer);
+        String json = writer.toString();
+        assertEquals(tree.nodes().count(), json.split("\"ph\":\"X\"").length - 1);
+        assertEquals(tree.nodes().map(SplitNode::getThreadName).distinct().count(),
+            Stream.of(json.split("\n")).filter(line -> line.contains("thread_name")).count());
+    }
+}
@@ -2,7 +2,17 @@ package one.util.streamtools;
 
 import static org.junit.Assert.*;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Collectors;
 import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
@@ -36,19 +46,18 @@ public class SplitTreeTest {
     
     @Test
     public void testEmulated() {
-        long start = System.nanoTime();
-        SplitNode left = new SplitNode();
+        FakeSplitClock clock = new FakeSplitClock(1000, 10);
+        SplitNode left = new SplitNode(clock);
         left.accept(1);
         left.accept(2);
         left.accept(3);
-        SplitNode right = new SplitNode();
+        SplitNode right = new SplitNode(clock);
         right.accept(4);
         right.accept(5);
         right.accept(6);
         SplitNode combo = left.combine(right);
-        SplitNode root = combo.combine(new SplitNode());
+        SplitNode root = combo.combine(new SplitNode(clock));
         SplitTree tree = new SplitTree(root);
-        long end = System.nanoTime();
         assertEquals(5, tree.nodes().count());
         assertEquals("      [1..6]      \n"+
                     "       __/\\____   \n"+
@@ -60,9 +69,18 @@ public class SplitTreeTest {
                 tree.toString());
         assertEquals(Arrays.asList(Thread.currentThread().getName()), tree.nodes().map(SplitNode::getThreadName)
                 .distinct().collect(Collectors.toList()));
-        assertTrue(tree.nodes().allMatch(node -> node.getStartNanos() >= start));
-        assertTrue(tree.nodes().allMatch(node -> node.getEndNanos() >= node.getStartNanos()));
-        assertTrue(tree.nodes().allMatch(node -> node.getEndNanos() <= end));
+        assertEquals(Thread.currentThread().getId(), root.getThreadId());
+        // every clock reading advances the time by 10
+        assertEquals(1000, left.getStartNanos());
+        assertEquals(1030, left.getEndNanos());
+        assertEquals(1040, right.getStartNanos());
+        assertEquals(1070, right.getEndNanos());
+        assertEquals(1080, combo.getStartNanos());
+        assertEquals(1090, combo.getEndNanos());
+        assertEquals(1110, root.getStartNanos());
+        assertEquals(1120, root.getEndNanos());
+        assertEquals(120, tree.totalNanos());
+        assertEquals(1130, clock.peek());
     }
 
     @Test
@@ -87,4 +105,358 @@ public class SplitTreeTest {
         assertEquals(2, SplitTree.inspect(DoubleStream.of(1, 2)).leafs().count());
         assertEquals(2, SplitTree.inspect(Stream.of(1, 2)).leafs().count());
     }
+
+    @Test
+    public void testLazyToString() {
+        AtomicInteger calls = new AtomicInteger();
+        SplitTree tree = IntStream.range(0, 1000).mapToObj(i -> new Object() {
+            @Override
+            public String toString() {
+                calls.incrementAndGet();
+                return String.valueOf(i);
+            }
+        }).collect(SplitTree.collector());
+        assertEquals(0, calls.get());
+        assertEquals("[0..999]", tree.root().toString());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testSampledTime() {
+        SplitTree tree = IntStream.range(0, 10000).boxed().parallel().collect(SplitTree.collector(1000));
+        assertEquals(10000, tree.root().getCount());
+        assertEquals("0", tree.root().getFirst());
+        assertEquals("9999", tree.root().getLast());
+        assertTrue(tree.nodes().allMatch(node -> node.getEndNanos() >= node.getStartNanos()));
+    }
+
+    @Test
+    public void testPrimitiveValues() {
+        assertEquals("[0..9999]", SplitTree.inspect(IntStream.range(0, 10000)).root().toString());
+        assertEquals("[0..9999]", SplitTree.inspect(LongStream.range(0, 10000)).root().toString());
+        assertEquals("[0.5..1.5]", SplitTree.inspect(DoubleStream.of(0.5, 1, 1.5)).root().toString());
+        assertEquals("[1]", SplitTree.inspect(IntStream.of(1)).root().toString());
+    }
+
+    @Test
+    public void testPrimitiveStatistics() {
+        IntSplitNode ints = IntStream.range(-500, 1000).parallel().collect(IntSplitNode::new,
+            IntSplitNode::accept, IntSplitNode::merge);
+        assertEquals(1500, ints.getCount());
+        assertEquals(-500, ints.getMin());
+        assertEquals(999, ints.getMax());
+        assertEquals(374250, ints.getSum());
+        assertEquals(249.5, ints.getAverage(), 0.0);
+        SplitTree tree = new SplitTree(ints);
+        assertTrue(tree.leafs().allMatch(
+            leaf -> ((IntSplitNode) leaf).getSum() == IntStream.rangeClosed(((IntSplitNode) leaf).getMin(),
+                ((IntSplitNode) leaf).getMax()).asLongStream().sum()));
+
+        LongSplitNode longs = LongStream.of(5, 3, 10).parallel().collect(() -> new LongSplitNode(16),
+            LongSplitNode::accept, LongSplitNode::merge);
+        assertEquals(3, longs.getMin());
+        assertEquals(10, longs.getMax());
+        assertEquals(18, longs.getSum());
+        assertEquals("[5..10]", longs.toString());
+
+        DoubleSplitNode doubles = DoubleStream.of(1.5, -2, 3).parallel().collect(DoubleSplitNode::new,
+            DoubleSplitNode::accept, DoubleSplitNode::merge);
+        assertEquals(-2, doubles.getMin(), 0.0);
+        assertEquals(3, doubles.getMax(), 0.0);
+        assertEquals(2.5, doubles.getSum(), 0.0);
+        
+        IntSplitNode empty = new IntSplitNode();
+        assertTrue(empty.isEmpty());
+        assertEquals(0, empty.getAverage(), 0.0);
+        assertEquals(Integer.MAX_VALUE, empty.getMin());
+    }
+
+    @Test
+    public void testProbe() {
+        List<SplitTree> trees = new ArrayList<>();
+        List<Integer> result = SplitTree.probe(IntStream.range(0, 1000).boxed().parallel().sorted(), trees::add)
+                .map(x -> x * 2).collect(Collectors.toList());
+        assertEquals(1000, result.size());
+        assertEquals(1998, (int) result.get(999));
+        assertEquals(1, trees.size());
+        SplitTree tree = trees.get(0);
+        assertEquals(1000, tree.root().getCount());
+        assertEquals("[0..999]", tree.root().toString());
+        assertEquals(1000, tree.leafs().mapToLong(SplitNode::getCount).sum());
+        assertTrue(tree.nodes().allMatch(node -> node.getEndNanos() >= node.getStartNanos()));
+
+        SplitTree sequential = SplitTree.probe(Stream.of(1, 2, 3), trees::add).collect(SplitTree.collector());
+        assertEquals(2, trees.size());
+        assertEquals(1, trees.get(1).nodes().count());
+        assertEquals(sequential.root().toString(), trees.get(1).root().toString());
+    }
+
+    @Test
+    public void testProbeShortCircuit() {
+        List<SplitTree> trees = new ArrayList<>();
+        try (Stream<Integer> stream = SplitTree.probe(Stream.iterate(0, x -> x + 1).limit(100), trees::add)) {
+            assertEquals(5, (int) stream.filter(x -> x == 5).findFirst().get());
+            assertTrue(trees.isEmpty());
+        }
+        assertEquals(1, trees.size());
+        assertEquals("[0..5]", trees.get(0).root().toString());
+    }
+
+    @Test
+    public void testDeepTree() {
+        SplitNode root = new SplitNode();
+        root.accept(0);
+        for (int i = 1; i < 100000; i++) {
+            SplitNode leaf = new SplitNode();
+            leaf.accept(i);
+            root = i % 2 == 0 ? root.combine(leaf) : leaf.combine(root);
+        }
+        SplitTree tree = new SplitTree(root);
+        assertEquals(199999, tree.nodes().count());
+        assertEquals(100000, tree.leafs().count());
+        assertTrue(tree.totalNanos() >= 0);
+    }
+
+    @Test
+    public void testLabelsIntact() {
+        Random r = new Random(1);
+        for (int iter = 0; iter < 100; iter++) {
+            List<SplitNode> nodes = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                SplitNode node = new SplitNode();
+                for (int j = r.nextInt(3); j > 0; j--)
+                    node.accept(r.nextInt(1 << r.nextInt(25)));
+                nodes.add(node);
+            }
+            while (nodes.size() > 1) {
+                int i = r.nextInt(nodes.size() - 1);
+                nodes.set(i, nodes.get(i).combine(nodes.remove(i + 1)));
+            }
+            SplitTree tree = new SplitTree(nodes.get(0));
+            Map<SplitNode, Integer> depths = new IdentityHashMap<>();
+            depths.put(tree.root(), 0);
+            tree.nodes().filter(node -> !node.isLeaf()).forEach(node -> {
+                depths.put(node.getLeft(), depths.get(node) + 1);
+                depths.put(node.getRight(), depths.get(node) + 1);
+            });
+            List<String> lines = tree.asLines();
+            for (int depth = 0; depth * 3 < lines.size(); depth++) {
+                int d = depth;
+                String labels = tree.nodes().filter(node -> depths.get(node) == d).map(SplitNode::toString)
+                        .collect(Collectors.joining(" "));
+                assertEquals(labels, lines.get(depth * 3).trim().replaceAll(" +", " "));
+            }
+        }
+    }
+
+    @Test
+    public void testCustomPool() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            SplitTree tree = SplitTree.inspect(IntStream.range(0, 10000), pool);
+            assertEquals(10000, tree.root().getCount());
+            assertTrue(tree.nodes().allMatch(node -> node.getPool() == pool || node.getPool() == null));
+            assertTrue(tree.nodes().anyMatch(node -> node.getPool() == pool));
+            assertTrue(tree.nodes().allMatch(node -> (node.getPool() == null) == (node.getWorkerIndex() == -1)));
+        } finally {
+            pool.shutdown();
+        }
+        SplitNode node = new SplitNode();
+        assertNull(node.getPool());
+        assertEquals(-1, node.getWorkerIndex());
+    }
+
+    @Test
+    public void testPoolNotRetained() throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        SplitTree tree = SplitTree.inspect(IntStream.range(0, 10000), pool);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        WeakReference<ForkJoinPool> ref = new WeakReference<>(pool);
+        pool = null;
+        for (int i = 0; i < 100 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+        assertTrue(tree.nodes().allMatch(node -> node.getPool() == null));
+        assertEquals(10000, tree.root().getCount());
+    }
+
+    @Test
+    public void testScalingReport() {
+        ScalingReport report = ScalingReport.sweep(() -> SplitTree.inspect(IntStream.range(0, 10000)), 1, 2, 4);
+        assertEquals(3, report.entries().size());
+        assertEquals(Arrays.asList(1, 2, 4), report.entries().stream().map(ScalingReport.Entry::getParallelism)
+                .collect(Collectors.toList()));
+        for (ScalingReport.Entry entry : report.entries()) {
+            assertEquals(10000, entry.getTree().root().getCount());
+            assertEquals(10000, entry.getLeafSizes().getSum());
+            assertTrue(entry.getWorkers() <= entry.getParallelism());
+        }
+        assertEquals(4, report.toString().split("\n").length);
+    }
+
+    @Test
+    public void testSampling() {
+        SplitTree tree = IntStream.range(0, 10000).boxed().parallel().collect(SplitTree.sampling(5));
+        assertEquals(10000, tree.root().getCount());
+        assertEquals(10000, tree.root().getWeight());
+        for (SplitNode node : tree.nodes().collect(Collectors.toList())) {
+            List<String> sample = ((SampledSplitNode) node).getSample();
+            assertEquals(Math.min(5, node.getCount()), sample.size());
+            for (String value : sample) {
+                int v = Integer.parseInt(value);
+                assertTrue(v >= Integer.parseInt(node.getFirst()) && v <= Integer.parseInt(node.getLast()));
+            }
+            assertEquals(sample.size(), sample.stream().distinct().count());
+        }
+
+        SplitTree small = Stream.of("a", "b").collect(SplitTree.sampling(5));
+        assertEquals(Arrays.asList("a", "b"), ((SampledSplitNode) small.root()).getSample());
+    }
+
+    @Test
+    public void testWeights() {
+        SplitTree tree = IntStream.range(0, 1000).boxed().parallel().collect(
+            SplitTree.sampling(0, (Integer x) -> x < 100 ? 100 : 1));
+        assertEquals(100 * 100 + 900, tree.root().getWeight());
+        assertEquals(tree.root().getWeight(), tree.leafs().mapToLong(SplitNode::getWeight).sum());
+        assertTrue(tree.analyze().weightImbalance() >= tree.analyze().imbalance());
+        assertEquals("1000/10900", tree.root().format("%c/%w"));
+
+        SplitTree timed = IntStream.range(0, 100).boxed().map(SampledSplitNode.timed(x -> x + 1)).collect(
+            SplitTree.sampling(1, SampledSplitNode.elapsedWeigher()));
+        assertEquals(100, timed.root().getCount());
+        assertTrue(timed.root().getWeight() >= 0);
+        // the time left over by another stream is not charged to the next one
+        Stream.of(1).map(SampledSplitNode.timed(x -> {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+            return x;
+        })).forEach(x -> {
+            // discarded
+        });
+        SplitTree next = Stream.of(1, 2).collect(SplitTree.sampling(1, SampledSplitNode.elapsedWeigher()));
+        assertTrue(next.root().getWeight() < TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void testClocks() {
+        SplitTree tree = IntStream.range(0, 1000).boxed().parallel().collect(SplitTree.collector(SplitClock.fake(1)));
+        assertEquals(1000, tree.root().getCount());
+        assertTrue(tree.nodes().allMatch(node -> node.getEndNanos() >= node.getStartNanos()));
+        assertTrue(tree.root().getStartNanos() >= 0 && tree.root().getEndNanos() < 10000);
+
+        try (CachedSplitClock clock = SplitClock.cached(100_000)) {
+            SplitTree cached = IntStream.range(0, 1000).boxed().parallel().collect(SplitTree.collector(clock, 16));
+            assertEquals(1000, cached.root().getCount());
+            long time = clock.nanoTime();
+            assertTrue(time <= System.nanoTime());
+        }
+        assertTrue(SplitClock.system().nanoTime() <= System.nanoTime());
+    }
+
+    @Test
+    public void testSampledInspect() {
+        List<SplitTree> trees = Arrays.asList(SplitTree.inspect(IntStream.range(0, 10000), 64), SplitTree.inspect(
+            LongStream.range(0, 10000), 64), SplitTree.inspect(IntStream.range(0, 10000).asDoubleStream(), 64),
+            SplitTree.inspect(IntStream.range(0, 10000).boxed(), 64));
+        for (SplitTree tree : trees) {
+            assertEquals(10000, tree.root().getCount());
+            assertEquals(10000, tree.leafs().mapToLong(SplitNode::getCount).sum());
+            assertTrue(tree.nodes().allMatch(node -> node.getEndNanos() >= node.getStartNanos()));
+        }
+        assertEquals(4999.5, ((IntSplitNode) trees.get(0).root()).getAverage(), 0.0);
+    }
+
+    @Test
+    public void testRenamedThread() throws InterruptedException {
+        List<SplitTree> trees = new ArrayList<>();
+        List<CompactSplitTree> compacts = new ArrayList<>();
+        Thread thread = new Thread(() -> {
+            trees.add(Stream.of(1, 2).collect(SplitTree.collector()));
+            Thread.currentThread().setName("renamed");
+            trees.add(Stream.of(1, 2).collect(SplitTree.collector()));
+            Thread.currentThread().setName("compact");
+            compacts.add(Stream.of(1, 2).collect(CompactSplitTree.collector()));
+        }, "original");
+        thread.start();
+        thread.join();
+        assertEquals("original", trees.get(0).root().getThreadName());
+        assertEquals("renamed", trees.get(1).root().getThreadName());
+        assertEquals(thread.getId(), trees.get(1).root().getThreadId());
+        CompactSplitTree compact = CompactSplitTree.of(trees.get(0));
+        assertEquals("original", compact.node(compact.root()).getThreadName());
+        assertEquals("compact", compacts.get(0).node(compacts.get(0).root()).getThreadName());
+    }
+
+    @Test
+    public void testWindowedRendering() {
+        SplitTree tree = SplitTree.inspect(IntStream.range(0, 1000).parallel());
+        assertSame(tree.asLines(), tree.asLines());
+        assertEquals(String.join("\n", tree.asLines()), tree.toString());
+        assertEquals(tree.asLines(), tree.asLines(Integer.MAX_VALUE));
+        List<String> top = tree.asLines(0);
+        assertEquals(1, top.size());
+        assertEquals(tree.root() + " (1000 elements below)", top.get(0));
+        assertSame(top, tree.asLines(0));
+        List<String> two = tree.asLines(1);
+        assertEquals(4, two.size());
+        assertTrue(two.get(3).contains(tree.root().getLeft().toString()));
+
+        assertSame(tree, tree.subtree(""));
+        assertSame(tree.root().getLeft().getRight(), tree.subtree("LR").root());
+        assertEquals(tree.root().getRight().asLines(), tree.subtree("R").asLines());
+        assertSame(tree.subtree("R"), tree.subtree("R"));
+        assertSame(tree.subtree("R").asLines(), tree.subtree("R").asLines());
+        SplitNode leaf = tree.leafs().findFirst().get();
+        StringBuilder sb = new StringBuilder();
+        for (SplitNode node = tree.root(); node != leaf; node = node.getLeft())
+            sb.append('L');
+        String path = sb.toString();
+        assertSame(leaf, tree.subtree(path).root());
+        try {
+            tree.subtree(path + "L");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            tree.subtree("X");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testParallelRendering() {
+        List<SplitNode> nodes = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            SplitNode node = new SplitNode();
+            node.accept(i);
+            nodes.add(node);
+        }
+        Random r = new Random(1);
+        while (nodes.size() > 1) {
+            int i = r.nextInt(nodes.size() - 1);
+            nodes.set(i, nodes.get(i).combine(nodes.remove(i + 1)));
+        }
+        SplitTree tree = new SplitTree(nodes.get(0));
+        assertTrue(tree.nodes().count() >= SplitTreeRenderer.PARALLEL_THRESHOLD);
+        List<String> lines = tree.asLines();
+        assertEquals(SplitTreeRenderer.renderSequentially(tree.root(), SplitNode::toString), lines);
+        Map<SplitNode, Integer> depths = new IdentityHashMap<>();
+        depths.put(tree.root(), 0);
+        tree.nodes().filter(node -> !node.isLeaf()).forEach(node -> {
+            depths.put(node.getLeft(), depths.get(node) + 1);
+            depths.put(node.getRight(), depths.get(node) + 1);
+        });
+        for (int depth = 0; depth * 3 < lines.size(); depth++) {
+            int d = depth;
+            String labels = tree.nodes().filter(node -> depths.get(node) == d).map(SplitNode::toString).collect(
+                Collectors.joining(" "));
+            assertEquals(labels, lines.get(depth * 3).trim().replaceAll(" +", " "));
+        }
+    }
 }
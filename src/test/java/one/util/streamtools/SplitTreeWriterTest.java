@@ -0,0 +1,74 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class SplitTreeWriterTest {
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<SplitTree> trees = Arrays.asList(SplitTree.inspect(IntStream.range(0, 10000)), SplitTree.inspect(Stream
+                .of("a", "b\u00e9", "c")), SplitTree.inspect(Stream.of("a", "b").filter(x -> false)), Stream.of("x")
+                .collect(SplitTree.collector()), IntStream.range(0, 1000).boxed().parallel().collect(
+                SplitTree.sampling(0, (Integer x) -> x % 7 - 3)));
+        File file = File.createTempFile("splittree", ".bin");
+        try {
+            try (SplitTreeWriter writer = new SplitTreeWriter(new FileOutputStream(file))) {
+                for (SplitTree tree : trees)
+                    writer.write(tree);
+            }
+            List<SplitTree> read = SplitTreeReader.readAll(file.toPath());
+            assertEquals(trees.size(), read.size());
+            for (int i = 0; i < trees.size(); i++)
+                assertSameTree(trees.get(i), read.get(i));
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        SplitTree tree = SplitTree.inspect(IntStream.range(0, 100000));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SplitTreeWriter(out).write(tree).flush();
+        long nodes = tree.nodes().count();
+        assertTrue(out.size() < nodes * 24 + 100);
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        assertSameTree(tree, SplitTreeReader.read(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongMagic() {
+        SplitTreeReader.read(ByteBuffer.wrap(new byte[16]));
+    }
+
+    private static void assertSameTree(SplitTree expected, SplitTree actual) {
+        assertEquals(expected.asLines(), actual.asLines());
+        Iterator<SplitNode> it = actual.nodes().iterator();
+        expected.nodes().forEach(e -> {
+            SplitNode a = it.next();
+            assertEquals(e.getThreadName(), a.getThreadName());
+            assertEquals(e.getWorkerIndex(), a.getWorkerIndex());
+            assertEquals(e.getStartNanos(), a.getStartNanos());
+            assertEquals(e.getEndNanos(), a.getEndNanos());
+            assertEquals(e.getCount(), a.getCount());
+            assertEquals(e.getWeight(), a.getWeight());
+            assertEquals(e.getFirst(), a.getFirst());
+            assertEquals(e.getLast(), a.getLast());
+            assertEquals(e.isLeaf(), a.isLeaf());
+        });
+        assertFalse(it.hasNext());
+    }
+}
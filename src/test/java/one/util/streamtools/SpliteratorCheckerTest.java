@@ -0,0 +1,162 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class SpliteratorCheckerTest {
+    private enum Bug {
+        NONE, LOSE_ELEMENT, SUFFIX_FIRST, WRONG_SIZE, EXACT_SIZE, COMPARATOR
+    }
+
+    private static class ArraySpliterator implements Spliterator<Integer> {
+        private final int[] data;
+        private final Bug bug;
+        private int from, to;
+
+        ArraySpliterator(int[] data, int from, int to, Bug bug) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+            this.bug = bug;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Integer> action) {
+            if (from >= to)
+                return false;
+            action.accept(data[from++]);
+            return true;
+        }
+
+        @Override
+        public Spliterator<Integer> trySplit() {
+            int mid = (from + to) >>> 1;
+            if (mid == from)
+                return null;
+            if (bug == Bug.SUFFIX_FIRST) {
+                ArraySpliterator suffix = new ArraySpliterator(data, mid, to, bug);
+                to = mid;
+                return suffix;
+            }
+            ArraySpliterator prefix = new ArraySpliterator(data, from, bug == Bug.LOSE_ELEMENT ? mid - 1 : mid, bug);
+            from = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return bug == Bug.WRONG_SIZE && to - from > 100 ? to - from + 1 : to - from;
+        }
+
+        @Override
+        public long getExactSizeIfKnown() {
+            return bug == Bug.EXACT_SIZE ? 42 : Spliterator.super.getExactSizeIfKnown();
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+
+        @Override
+        public Comparator<? super Integer> getComparator() {
+            if (bug == Bug.COMPARATOR)
+                return null;
+            return Spliterator.super.getComparator();
+        }
+    }
+
+    private static SpliteratorReport check(Bug bug) {
+        return check(bug, 1000);
+    }
+
+    private static SpliteratorReport check(Bug bug, int size) {
+        int[] data = IntStream.range(0, size).toArray();
+        return new SpliteratorChecker().check(() -> new ArraySpliterator(data, 0, data.length, bug));
+    }
+
+    private static boolean hasViolation(SpliteratorReport report, String text) {
+        return report.violations().stream().anyMatch(v -> v.contains(text));
+    }
+
+    @Test
+    public void testValid() {
+        SpliteratorReport report = check(Bug.NONE);
+        report.assertValid();
+        assertEquals(6 + 8, report.entries().size());
+        assertEquals(1, report.entry("forEachRemaining").getTree().nodes().count());
+        SpliteratorReport.Entry balanced = report.entry("balanced");
+        assertEquals(1000, balanced.getCount());
+        assertEquals(256, balanced.getTree().leafs().count());
+        assertEquals(8, balanced.getAnalysis().maxDepth());
+        assertTrue(balanced.getThroughput() > 0);
+        assertEquals(9, report.entry("prefix-deep").getTree().leafs().count());
+        // elements consumed before every split are recorded as separate leafs
+        assertEquals(1000, report.entry("advance-and-split").getTree().root().getCount());
+        assertTrue(report.toString().startsWith("pattern"));
+
+        List<Integer> list = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+        new SpliteratorChecker().seed(2).randomPatterns(20).check(list::spliterator).assertValid();
+        TreeSet<String> set = list.stream().map(String::valueOf).collect(Collectors.toCollection(TreeSet::new));
+        new SpliteratorChecker().maxDepth(4).check(set::spliterator).assertValid();
+        new SpliteratorChecker().check(() -> IntStream.range(0, 100).filter(x -> x % 3 == 0).spliterator())
+                .assertValid();
+    }
+
+    @Test
+    public void testLostElement() {
+        SpliteratorReport report = check(Bug.LOSE_ELEMENT);
+        assertFalse(report.isValid());
+        assertTrue(report.entry("forEachRemaining").isValid());
+        assertFalse(report.entry("balanced").isValid());
+        assertTrue(hasViolation(report, "balanced: root: SUBSIZED but the part sizes 499 + 500 != 1000"));
+        assertTrue(hasViolation(report, "elements differ from the sequential traversal"));
+        try {
+            report.assertValid();
+            fail("Expected AssertionError");
+        } catch (AssertionError e) {
+            assertTrue(e.getMessage().contains("missing"));
+        }
+    }
+
+    @Test
+    public void testOrder() {
+        SpliteratorReport report = check(Bug.SUFFIX_FIRST);
+        assertTrue(hasViolation(report, "balanced: ORDERED but the encounter order differs at index 0"));
+        assertFalse(hasViolation(report, "elements differ"));
+    }
+
+    @Test
+    public void testSize() {
+        SpliteratorReport report = check(Bug.WRONG_SIZE);
+        assertTrue(hasViolation(report, "forEachRemaining: root: SIZED with estimateSize() = 1001 but 1000"));
+        assertTrue(hasViolation(report, "balanced: root: SUBSIZED but the part sizes 501 + 501 != 1001"));
+        assertFalse(hasViolation(report, "elements differ"));
+    }
+
+    @Test
+    public void testExactSize() {
+        SpliteratorReport report = check(Bug.EXACT_SIZE, 8);
+        assertFalse(report.isValid());
+        assertTrue(hasViolation(report,
+            "root: getExactSizeIfKnown() = 42 is inconsistent with estimateSize() = 8"));
+    }
+
+    @Test
+    public void testComparator() {
+        SpliteratorReport report = check(Bug.COMPARATOR);
+        assertTrue(hasViolation(report, "root: getComparator() does not throw IllegalStateException"));
+        List<String> violations = new ArrayList<>(report.entry("balanced").getViolations());
+        assertEquals(511, violations.size());
+    }
+}
@@ -0,0 +1,66 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class StageTracerTest {
+    @Test
+    public void testStages() {
+        StageTracer<Integer> tracer = StageTracer.wrap(IntStream.range(0, 10000).boxed().parallel());
+        List<String> result = tracer.stream().filter(tracer.filter("even", x -> x % 2 == 0)).map(tracer.map(
+            "toString", String::valueOf)).peek(tracer.peek("check", s -> assertFalse(s.isEmpty()))).collect(
+            Collectors.toList());
+        assertEquals(5000, result.size());
+        assertEquals(Arrays.asList("even", "toString", "check"), tracer.stages());
+        SplitTree tree = tracer.tree();
+        assertTrue(tree.nodes().allMatch(TracedSplitNode.class::isInstance));
+        TracedSplitNode root = (TracedSplitNode) tree.root();
+        assertEquals(10000, root.getStageCount("even"));
+        assertEquals(5000, root.getStageCount("toString"));
+        assertEquals(5000, root.getStageCount("check"));
+        assertEquals(0, root.getStageCount("unknown"));
+        assertEquals(10000, tree.leafs().mapToLong(node -> ((TracedSplitNode) node).getStageCount("even")).sum());
+        for (SplitNode leaf : tree.leafs().collect(Collectors.toList()))
+            assertEquals(leaf.getCount(), ((TracedSplitNode) leaf).getStageCount("even"));
+        assertTrue(root.getStageNanos("toString") > 0);
+        assertTrue(tracer.toString().startsWith("even: 10000 elements, "));
+    }
+
+    @Test
+    public void testSampling() {
+        StageTracer<Integer> tracer = StageTracer.wrap(IntStream.range(0, 1000).boxed(), 16);
+        assertEquals(500500, tracer.stream().map(tracer.map("inc", x -> x + 1)).mapToInt(x -> x).sum());
+        TracedSplitNode root = (TracedSplitNode) tracer.tree().root();
+        assertTrue(root.isLeaf());
+        assertEquals(1000, root.getStageCount("inc"));
+        assertTrue(root.getStageNanos("inc") >= 0);
+    }
+
+    @Test
+    public void testShortCircuit() {
+        StageTracer<Integer> tracer = StageTracer.wrap(IntStream.range(0, 1000).boxed());
+        Function<Integer, Integer> inc = tracer.map("inc", x -> x + 1);
+        assertEquals(1, (int) tracer.stream().map(inc).findFirst().get());
+        TracedSplitNode root = (TracedSplitNode) tracer.tree().root();
+        assertEquals(1, root.getStageCount("inc"));
+        // the unfinished leaf is not current anymore
+        inc.apply(0);
+        assertEquals(1, root.getStageCount("inc"));
+
+        tracer = StageTracer.wrap(IntStream.range(0, 1000).boxed());
+        inc = tracer.map("inc", x -> x + 1);
+        try (Stream<Integer> stream = tracer.stream()) {
+            assertEquals(1, (int) stream.map(inc).findFirst().get());
+        }
+        inc.apply(0);
+        assertEquals(1, ((TracedSplitNode) tracer.tree().root()).getStageCount("inc"));
+    }
+}
@@ -0,0 +1,65 @@
+package one.util.streamtools;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class TimeLineFormatterTest {
+    @Test
+    public void testSequential() {
+        SplitTree tree = IntStream.range(0, 100000).boxed().collect(SplitTree.collector());
+        List<String> lines = TimeLineFormatter.formatToWidth(tree, 40);
+        assertEquals(1, lines.size());
+        String prefix = Thread.currentThread().getName() + " : ";
+        assertTrue(lines.get(0).startsWith(prefix));
+        String line = lines.get(0).substring(prefix.length());
+        assertTrue(line.length() <= 40);
+        assertTrue(line, line.startsWith("[0"));
+        assertTrue(line, line.trim().endsWith("99999]"));
+        assertTrue(line, line.contains(".."));
+    }
+
+    @Test
+    public void testParallel() {
+        SplitTree tree = SplitTree.inspect(IntStream.range(0, 100000));
+        List<String> lines = TimeLineFormatter.format(tree);
+        assertEquals(tree.nodes().map(SplitNode::getThreadName).distinct().count(), lines.size());
+        int nameLength = tree.nodes().mapToInt(node -> node.getThreadName().length()).max().getAsInt();
+        for (String line : lines) {
+            assertEquals(" : ", line.substring(nameLength, nameLength + 3));
+            assertTrue(line.length() <= nameLength + 3 + 120);
+        }
+        assertTrue(lines.stream().anyMatch(line -> line.indexOf('+') >= 0 || line.indexOf('#') >= 0));
+    }
+
+    @Test
+    public void testQuantum() {
+        SplitTree tree = SplitTree.inspect(IntStream.range(0, 1000));
+        long quantum = tree.totalNanos() / 10 + 1;
+        for (String line : TimeLineFormatter.format(tree, quantum)) {
+            assertTrue(line.length() <= line.indexOf(" : ") + 3 + 11);
+        }
+    }
+
+    @Test
+    public void testTooSmallQuantum() {
+        // the fake clock ticks by 2^40 ns, so the time line of 1 ns quantum overflows int
+        SplitTree tree = IntStream.range(0, 10).boxed().collect(SplitTree.collector(SplitClock.fake(1L << 40)));
+        try {
+            TimeLineFormatter.format(tree, 1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("too small"));
+        }
+        assertEquals(1, TimeLineFormatter.format(tree, 1L << 40).size());
+        assertEquals(1, TimeLineFormatter.formatToWidth(tree, 40).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadWidth() {
+        TimeLineFormatter.formatToWidth(SplitTree.inspect(IntStream.range(0, 10)), 0);
+    }
+}
@@ -1,11 +1,20 @@
 package one.util.streamtools;
 
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.stream.IntStream;
 import java.util.stream.StreamSupport;
 
+import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
@@ -13,6 +22,8 @@ import javax.xml.transform.stream.StreamResult;
 
 import org.junit.Test;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 public class XGMLFormatterTest {
     @Test
@@ -31,6 +42,47 @@ public class XGMLFormatterTest {
         }
     }
 
+    @Test
+    public void testStreamingWriter() throws Exception {
+        SplitTree tree = createGraph();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new XGMLFormatter().nodeFormat("<%f & %l>", "\"empty\"").writeTo(tree, os);
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+            new ByteArrayInputStream(os.toByteArray()));
+        List<String> sections = new ArrayList<>();
+        NodeList list = doc.getElementsByTagName("section");
+        for (int i = 0; i < list.getLength(); i++)
+            sections.add(((Element) list.item(i)).getAttribute("name"));
+        assertEquals(tree.nodes().count(), sections.stream().filter("node"::equals).count());
+        assertEquals(tree.nodes().filter(node -> !node.isLeaf()).count() * 2, sections.stream().filter(
+            "edge"::equals).count());
+        Element label = (Element) ((Element) doc.getElementsByTagName("section").item(2)).getElementsByTagName(
+            "attribute").item(1);
+        assertEquals("label", label.getAttribute("key"));
+        SplitNode root = tree.root();
+        assertEquals("<" + root.getFirst() + " & " + root.getLast() + ">", label.getTextContent());
+    }
+
+    @Test
+    public void testReformat() throws Exception {
+        SplitTree tree = createGraph();
+        XGMLFormatter formatter = new XGMLFormatter().nodeFormat("[%f..%l]", "(empty)");
+        StringWriter first = new StringWriter(), second = new StringWriter();
+        formatter.writeTo(tree, first);
+        formatter.nodeFormat("%c", "-").writeTo(tree, second);
+        List<String> firstLines = Arrays.asList(first.toString().split("\n"));
+        List<String> secondLines = Arrays.asList(second.toString().split("\n"));
+        assertEquals(firstLines.size(), secondLines.size());
+        for (int i = 0; i < firstLines.size(); i++) {
+            if (!firstLines.get(i).contains("key=\"label\""))
+                assertEquals(firstLines.get(i), secondLines.get(i));
+        }
+        assertFalse(first.toString().equals(second.toString()));
+        StringWriter wide = new StringWriter();
+        formatter.nodeWidth(200).writeTo(tree, wide);
+        assertFalse(second.toString().equals(wide.toString()));
+    }
+
     private SplitTree createGraph() {
         return SplitTree.inspect(IntStream.range(0, 7000));
 //        SplitNode left = new SplitNode();